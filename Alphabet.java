@@ -1,26 +1,134 @@
 package enigma;
 import static enigma.EnigmaException.*;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  Characters are Unicode code
+ *  points, so an alphabet may contain supplementary characters, which take
+ *  two chars in a String.  Large alphabets made of a few runs of
+ *  consecutive code points, such as a CJK syllabary, are stored as those
+ *  runs rather than character by character.
  *  @author James Nho Nguyen
  */
 class Alphabet {
 
-    /** A new alphabet containing CHARS. The K-th character has index
-     *  K (numbering from 0). No character may be duplicated. */
+    /** A new alphabet containing the code points of CHARS. The K-th code
+     *  point has index K (numbering from 0). No character may be
+     *  duplicated. */
     Alphabet(String chars) {
-        _alphabetList = new ArrayList<>();
-        for (int each = 0; each < chars.length(); each += 1) {
-            _alphabetList.add(chars.charAt(each));
+        this(chars.codePoints().toArray());
+    }
+
+    /** A new alphabet whose K-th character is the code point
+     *  CODEPOINTS[K]. No character may be duplicated. */
+    Alphabet(int[] codePoints) {
+        _size = codePoints.length;
+        int min = Character.MAX_CODE_POINT, max = 0, runs = 0;
+        boolean bmp = true, bytes = _size == BYTES;
+        for (int k = 0; k < _size; k += 1) {
+            int c = codePoints[k];
+            if (!Character.isValidCodePoint(c)) {
+                throw error("invalid code point %d", c);
+            }
+            min = Math.min(min, c);
+            max = Math.max(max, c);
+            bmp &= Character.isBmpCodePoint(c);
+            bytes &= c == k;
+            runs += k == 0 || c != codePoints[k - 1] + 1 ? 1 : 0;
+        }
+        _isBmp = bmp;
+        _isBytes = bytes;
+        if (_size > DENSE_SPAN && runs <= _size / MIN_RUN) {
+            _runStarts = new int[runs];
+            _runIndices = new int[runs];
+            for (int k = 0, r = -1; k < _size; k += 1) {
+                if (k == 0 || codePoints[k] != codePoints[k - 1] + 1) {
+                    r += 1;
+                    _runStarts[r] = codePoints[k];
+                    _runIndices[r] = k;
+                }
+            }
+            checkRuns();
+            return;
+        }
+        if (bmp) {
+            _chars = new char[_size];
+            for (int k = 0; k < _size; k += 1) {
+                _chars[k] = (char) codePoints[k];
+            }
+        } else {
+            _codePoints = codePoints.clone();
+        }
+        if (_size == 0 || max - min < DENSE_SPAN) {
+            _base = _size == 0 ? 0 : min;
+            _dense = new int[_size == 0 ? 1 : max - _base + 1];
+            Arrays.fill(_dense, -1);
+        } else {
+            int capacity = Integer.highestOneBit(_size * 2 - 1) << 1;
+            _keys = new int[capacity];
+            _values = new int[capacity];
+            Arrays.fill(_keys, -1);
+            _shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        }
+        for (int each = 0; each < _size; each += 1) {
+            if (!put(codePoints[each], each)) {
+                throw new EnigmaException("Duplicates found.");
+            }
+        }
+    }
+
+    /** Return the alphabet of the code points FIRST through LAST, in
+     *  order, which is stored in constant space. */
+    static Alphabet range(int first, int last) {
+        if (first > last) {
+            throw error("empty code point range");
+        }
+        int[] codePoints = new int[last - first + 1];
+        for (int k = 0; k < codePoints.length; k += 1) {
+            codePoints[k] = first + k;
         }
-        for (int each = 0; each < _alphabetList.size(); each++) {
-            if (_alphabetList.lastIndexOf(_alphabetList.get(each)) != each) {
+        return new Alphabet(codePoints);
+    }
+
+    /** Check that my runs do not overlap, which would duplicate a
+     *  character. */
+    private void checkRuns() {
+        int[] order = new int[_runStarts.length];
+        long[] sorted = new long[_runStarts.length];
+        for (int r = 0; r < sorted.length; r += 1) {
+            sorted[r] = ((long) _runStarts[r] << 32) | r;
+        }
+        Arrays.sort(sorted);
+        for (int r = 0; r < sorted.length; r += 1) {
+            order[r] = (int) sorted[r];
+        }
+        for (int r = 1; r < order.length; r += 1) {
+            int prev = order[r - 1];
+            if (_runStarts[prev] + runLength(prev) > _runStarts[order[r]]) {
                 throw new EnigmaException("Duplicates found.");
             }
         }
+        _runOrder = order;
+    }
+
+    /** Return the number of characters in run R. */
+    private int runLength(int r) {
+        return (r + 1 < _runIndices.length ? _runIndices[r + 1] : _size)
+            - _runIndices[r];
+    }
+
+    /** Return the alphabet of the BYTES byte values, in which the
+     *  character with value K has index K. */
+    static Alphabet bytes() {
+        return range(0, BYTES - 1);
+    }
+
+    /** Return true iff I contain exactly the characters with the BYTES
+     *  byte values, each at the index equal to its value, as bytes()
+     *  does. */
+    boolean isBytes() {
+        return _isBytes;
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -28,27 +136,184 @@ class Alphabet {
         this("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
     }
 
+    /** Record that character CH has index INDEX.  Returns false if CH
+     *  was already present. */
+    private boolean put(int ch, int index) {
+        if (_dense != null) {
+            if (_dense[ch - _base] >= 0) {
+                return false;
+            }
+            _dense[ch - _base] = index;
+            return true;
+        }
+        int mask = _keys.length - 1;
+        for (int slot = hash(ch); ; slot = (slot + 1) & mask) {
+            if (_keys[slot] == ch) {
+                return false;
+            } else if (_keys[slot] < 0) {
+                _keys[slot] = ch;
+                _values[slot] = index;
+                return true;
+            }
+        }
+    }
+
+    /** Return the home slot of CH in the open-addressing table. */
+    private int hash(int ch) {
+        return (ch * HASH_MULTIPLIER) >>> _shift;
+    }
+
     /** Returns the size of the alphabet. */
     int size() {
-        return _alphabetList.size();
+        return _size;
+    }
+
+    /** Return true iff all my characters are in the Basic Multilingual
+     *  Plane, so that each is a single char and toChar() applies to all
+     *  indices. */
+    boolean isBmp() {
+        return _isBmp;
     }
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        return _alphabetList.contains(ch);
+        return toInt(ch) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
-     *  0 <= INDEX < size(). */
+     *  0 <= INDEX < size().  The character must be a single char. */
     char toChar(int index) {
-        return _alphabetList.get(index);
+        if (_chars != null) {
+            return _chars[index];
+        }
+        int c = toCodePoint(index);
+        if (!Character.isBmpCodePoint(c)) {
+            throw error("character %d is not a 16-bit character", index);
+        }
+        return (char) c;
+    }
+
+    /** Returns the code point of character number INDEX in the alphabet,
+     *  where 0 <= INDEX < size(). */
+    int toCodePoint(int index) {
+        if (_chars != null) {
+            return _chars[index];
+        } else if (_codePoints != null) {
+            return _codePoints[index];
+        }
+        int lo = 0, hi = _runIndices.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (_runIndices[mid] <= index) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return _runStarts[lo] + index - _runIndices[lo];
     }
 
     /** Returns the index of character CH which must be in
-     *  the alphabet. This is the inverse of toChar(). */
+     *  the alphabet. This is the inverse of toChar(). Returns -1 if CH
+     *  is not in the alphabet. */
     int toInt(char ch) {
-        return _alphabetList.indexOf(ch);
+        return toInt((int) ch);
+    }
+
+    /** Returns the index of the character with code point CODEPOINT, or
+     *  -1 if it is not in the alphabet.  This is the inverse of
+     *  toCodePoint(). */
+    int toInt(int codePoint) {
+        if (_dense != null) {
+            int k = codePoint - _base;
+            return k >= 0 && k < _dense.length ? _dense[k] : -1;
+        } else if (_keys != null) {
+            int mask = _keys.length - 1;
+            for (int slot = hash(codePoint); ; slot = (slot + 1) & mask) {
+                int key = _keys[slot];
+                if (key == codePoint) {
+                    return _values[slot];
+                } else if (key < 0) {
+                    return -1;
+                }
+            }
+        }
+        int lo = 0, hi = _runOrder.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (_runStarts[_runOrder[mid]] <= codePoint) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        int r = _runOrder[lo];
+        int offset = codePoint - _runStarts[r];
+        return offset >= 0 && offset < runLength(r)
+            ? _runIndices[r] + offset : -1;
+    }
+
+    /** Return the approximate number of bytes used by my tables. */
+    long footprint() {
+        long words = 0;
+        for (int[] table : new int[][] { _codePoints, _dense, _keys, _values,
+                                         _runStarts, _runIndices,
+                                         _runOrder }) {
+            words += table == null ? 0 : table.length;
+        }
+        return 4 * words + (_chars == null ? 0 : 2L * _chars.length);
     }
-    /** Alphabet list. */
-    private ArrayList<Character> _alphabetList;
+
+    /** Alphabets whose characters all lie within a range of this many
+     *  code points are indexed by a direct-mapped table. */
+    static final int DENSE_SPAN = 1024;
+
+    /** Number of byte values, and size of the alphabet returned by
+     *  bytes(). */
+    static final int BYTES = 256;
+
+    /** Alphabets of more than DENSE_SPAN characters are stored as runs of
+     *  consecutive code points when their runs average at least this
+     *  many characters. */
+    static final int MIN_RUN = 16;
+
+    /** Fibonacci hashing multiplier for the sparse table. */
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
+    /** Number of characters in this alphabet. */
+    private final int _size;
+    /** True iff every character is in the Basic Multilingual Plane. */
+    private final boolean _isBmp;
+    /** True iff I am an alphabet of bytes, see isBytes(). */
+    private final boolean _isBytes;
+
+    /** The characters of this alphabet, in index order, if they are all
+     *  single chars and not stored as runs.  Otherwise null. */
+    private char[] _chars;
+    /** The characters of this alphabet, in index order, if some are
+     *  supplementary and they are not stored as runs.  Otherwise null. */
+    private int[] _codePoints;
+
+    /** First code point of each run of consecutive characters, in index
+     *  order, or null if the alphabet is not stored as runs. */
+    private int[] _runStarts;
+    /** Index of the first character of each run. */
+    private int[] _runIndices;
+    /** Run numbers in increasing order of their first code points. */
+    private int[] _runOrder;
+
+    /** Smallest character covered by _dense. */
+    private int _base;
+    /** Direct-mapped index of each character in [_base, _base +
+     *  _dense.length), or -1.  Null if the alphabet is sparse or stored
+     *  as runs. */
+    private int[] _dense;
+
+    /** Keys of the sparse open-addressing table, -1 marking empty slots.
+     *  Null if the alphabet is dense or stored as runs. */
+    private int[] _keys;
+    /** Index of the character in the corresponding slot of _keys. */
+    private int[] _values;
+    /** Right shift that reduces a 32-bit hash to a slot number. */
+    private int _shift;
 }
@@ -36,4 +36,71 @@ public class AlphabetTest {
             assertTrue(test.contains(curr)); }
         assertFalse(test.contains('A'));
     }
+
+    @Test
+    public void testSparse() {
+        String testString = "A\u00e9\u4e2d\u0416z\uffef";
+        Alphabet test = new Alphabet(testString);
+        assertEquals(6, test.size());
+        for (int i = 0; i < testString.length(); i += 1) {
+            assertEquals(i, test.toInt(testString.charAt(i)));
+            assertEquals(testString.charAt(i), test.toChar(i));
+        }
+        assertFalse(test.contains('B'));
+        assertEquals(-1, test.toInt('\u4e2e'));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDuplicate() {
+        new Alphabet("ABCA");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testSparseDuplicate() {
+        new Alphabet("A\u4e2dB\u4e2d");
+    }
+
+    @Test
+    public void testSupplementary() {
+        String testString = "AB\ud840\udc00\ud840\udc01C";
+        Alphabet test = new Alphabet(testString);
+        assertEquals(5, test.size());
+        assertFalse(test.isBmp());
+        assertEquals(2, test.toInt(0x20000));
+        assertEquals(0x20001, test.toCodePoint(3));
+        assertEquals('C', test.toChar(4));
+        assertEquals(-1, test.toInt(0x20002));
+        assertTrue(new Alphabet("ABC").isBmp());
+    }
+
+    @Test
+    public void testRuns() {
+        Alphabet hangul = Alphabet.range(0xac00, 0xd7a3);
+        assertEquals(11172, hangul.size());
+        assertTrue(hangul.footprint() < 64);
+        assertEquals(0, hangul.toInt('\uac00'));
+        assertEquals(11171, hangul.toInt('\ud7a3'));
+        assertEquals('\uac05', hangul.toChar(5));
+        assertEquals(-1, hangul.toInt('A'));
+        int[] codePoints = new int[4000];
+        for (int k = 0; k < codePoints.length; k += 1) {
+            codePoints[k] = k < 2000 ? 0x30000 + k : 0x4e00 + k;
+        }
+        Alphabet twoRuns = new Alphabet(codePoints);
+        for (int k = 0; k < codePoints.length; k += 1) {
+            assertEquals(k, twoRuns.toInt(codePoints[k]));
+            assertEquals(codePoints[k], twoRuns.toCodePoint(k));
+        }
+        assertEquals(-1, twoRuns.toInt(0x4e00 + 1999));
+        assertEquals(-1, twoRuns.toInt(0x30000 + 2000));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testOverlappingRuns() {
+        int[] codePoints = new int[4000];
+        for (int k = 0; k < codePoints.length; k += 1) {
+            codePoints[k] = k < 2000 ? 0x4e00 + 1000 + k : 0x4e00 + k;
+        }
+        new Alphabet(codePoints);
+    }
 }
@@ -0,0 +1,106 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** Converts arbitrary binary data with a machine whose alphabet is
+ *  Alphabet.bytes(), as one continuous message: there are no settings
+ *  lines, and the input is neither split into lines nor grouped.
+ *  @author James Nho Nguyen
+ */
+class ByteStream {
+
+    /** A stream converting with MACHINE, whose alphabet must be an
+     *  alphabet of bytes, BLOCKSIZE bytes at a time. */
+    ByteStream(Machine machine, int blockSize) {
+        if (!machine.alphabet().isBytes()) {
+            throw error("byte streams need a %d-symbol alphabet",
+                        Alphabet.BYTES);
+        }
+        _machine = machine;
+        _blockSize = blockSize;
+    }
+
+    /** A stream converting with MACHINE BLOCK_SIZE bytes at a time. */
+    ByteStream(Machine machine) {
+        this(machine, BLOCK_SIZE);
+    }
+
+    /** Convert all of INPUT, writing the result to OUTPUT, which is
+     *  flushed at the end. */
+    void process(InputStream input, OutputStream output) {
+        byte[] block = new byte[_blockSize];
+        for (int n = read(input, block); n > 0; n = read(input, block)) {
+            _machine.convert(block, 0, n);
+            try {
+                output.write(block, 0, n);
+            } catch (IOException excp) {
+                throw error("could not write output: %s", excp.getMessage());
+            }
+            _count += n;
+        }
+        try {
+            output.flush();
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
+
+    /** Fill BLOCK from INPUT as far as it goes, returning the number of
+     *  bytes read. */
+    private static int read(InputStream input, byte[] block) {
+        try {
+            return input.readNBytes(block, 0, block.length);
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+    }
+
+    /** Convert the file named INPUT into the file named OUTPUT, mapping
+     *  both into memory WINDOW bytes at a time.  OUTPUT is replaced. */
+    void process(String input, String output, int window) {
+        try (FileChannel in = FileChannel.open(Path.of(input),
+                                               StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(Path.of(output),
+                 StandardOpenOption.CREATE, StandardOpenOption.READ,
+                 StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            for (long start = 0; start < size; start += window) {
+                long length = Math.min(window, size - start);
+                MappedByteBuffer source =
+                    in.map(FileChannel.MapMode.READ_ONLY, start, length);
+                MappedByteBuffer dest =
+                    out.map(FileChannel.MapMode.READ_WRITE, start, length);
+                dest.put(source);
+                dest.flip();
+                _machine.convert(dest);
+                _count += length;
+            }
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Return the number of bytes converted so far. */
+    long count() {
+        return _count;
+    }
+
+    /** Default number of bytes read and converted at a time. */
+    static final int BLOCK_SIZE = 1 << 20;
+
+    /** Machine that converts the bytes. */
+    private final Machine _machine;
+    /** Number of bytes read and converted at a time. */
+    private final int _blockSize;
+    /** Number of bytes converted. */
+    private long _count;
+}
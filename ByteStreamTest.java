@@ -0,0 +1,113 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for byte mode: ByteStream, the byte
+ *  conversions of Machine, and RotorGenerator.
+ *  @author James Nho Nguyen
+ */
+public class ByteStreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return a machine over Alphabet.bytes() with rotors generated from
+     *  SEED, set up with a fixed choice of rotors and settings. */
+    private Machine machine(long seed) {
+        Machine machine =
+            new RotorGenerator(Alphabet.bytes(), seed).machine();
+        machine.insertRotors(new String[] { "R1", "F2", "M3", "M1", "M7" });
+        machine.setRotors("\u0000\u00ffA\u0080");
+        machine.setPlugboard(new Permutation("(AB)", machine.alphabet()));
+        return machine;
+    }
+
+    /** Return N random bytes. */
+    private byte[] randomBytes(int n) {
+        byte[] result = new byte[n];
+        new Random(n).nextBytes(result);
+        return result;
+    }
+
+    @Test
+    public void testBytesAlphabet() {
+        Alphabet bytes = Alphabet.bytes();
+        assertEquals(Alphabet.BYTES, bytes.size());
+        assertTrue(bytes.isBytes());
+        assertEquals(200, bytes.toInt((char) 200));
+        assertFalse(new Alphabet().isBytes());
+    }
+
+    @Test
+    public void testGeneratedRotors() {
+        RotorGenerator gen = new RotorGenerator(Alphabet.bytes(), 1);
+        Permutation reflection = gen.reflection();
+        for (int k = 0; k < Alphabet.BYTES; k += 1) {
+            assertNotEquals(k, reflection.permute(k));
+            assertEquals(k, reflection.permute(reflection.permute(k)));
+        }
+        assertEquals(3, gen.notches(3).length());
+        assertEquals(machine(7).convert(1), machine(7).convert(1));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        byte[] plain = randomBytes(100000);
+        byte[] data = plain.clone();
+        machine(3).convert(data, 0, data.length);
+        assertFalse(Arrays.equals(plain, data));
+        machine(3).convert(data, 0, data.length);
+        assertArrayEquals(plain, data);
+    }
+
+    @Test
+    public void testBuffersMatchArrays() {
+        byte[] plain = randomBytes(70000);
+        byte[] expected = plain.clone();
+        machine(5).convert(expected, 0, expected.length);
+        ByteBuffer direct = ByteBuffer.allocateDirect(plain.length + 10);
+        direct.position(10);
+        direct.put(plain);
+        direct.position(10);
+        machine(5).convert(direct);
+        assertEquals(direct.limit(), direct.position());
+        byte[] actual = new byte[plain.length];
+        direct.position(10);
+        direct.get(actual);
+        assertArrayEquals(expected, actual);
+        byte[] backing = new byte[plain.length + 5];
+        System.arraycopy(plain, 0, backing, 5, plain.length);
+        machine(5).convert(ByteBuffer.wrap(backing, 5, plain.length).slice());
+        assertArrayEquals(expected,
+                          Arrays.copyOfRange(backing, 5, backing.length));
+    }
+
+    @Test
+    public void testStream() {
+        byte[] plain = randomBytes(5000);
+        byte[] expected = plain.clone();
+        machine(9).convert(expected, 0, expected.length);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteStream stream = new ByteStream(machine(9), 777);
+        stream.process(new ByteArrayInputStream(plain), out);
+        assertArrayEquals(expected, out.toByteArray());
+        assertEquals(plain.length, stream.count());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNeedsBytes() {
+        new Machine(new Alphabet(), 5, 3, new ArrayList<Rotor>())
+            .convert(new byte[1], 0, 1);
+    }
+}
@@ -0,0 +1,192 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** Compiled machine configurations.  A configuration image holds what a
+ *  configuration file describes, with each rotor's permutation stored as
+ *  a table, so that loading it involves no parsing of cycles.  An image
+ *  consists of
+ *      magic number    4 bytes, "ENIG"
+ *      version         int
+ *      body length     int
+ *      body checksum   int, the CRC-32 of the body
+ *      body
+ *  and the body of
+ *      alphabet        string
+ *      rotor slots     int
+ *      pawls           int
+ *      rotor count     int
+ *  followed, for each rotor, by
+ *      name            string
+ *      type            byte: 'M' (moving), 'N' (fixed) or 'R' (reflector)
+ *      notches         string
+ *      permutation     one int per character of the alphabet
+ *  Strings are an int length followed by that many UTF-16 chars.  Numbers
+ *  are big-endian.
+ *  @author James Nho Nguyen
+ */
+class ConfigImage {
+
+    /** Write an image of the configuration of MACHINE, whose available
+     *  rotors are those of its getRotorMap(), to OUT. */
+    static void write(Machine machine, OutputStream out) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bytes);
+        Alphabet alphabet = machine.alphabet();
+        StringBuilder chars = new StringBuilder(alphabet.size());
+        for (int k = 0; k < alphabet.size(); k += 1) {
+            chars.appendCodePoint(alphabet.toCodePoint(k));
+        }
+        writeString(body, chars.toString());
+        body.writeInt(machine.numRotors());
+        body.writeInt(machine.numPawls());
+        body.writeInt(machine.getRotorMap().size());
+        for (Rotor rotor : machine.getRotorMap().values()) {
+            writeString(body, rotor.name());
+            body.writeByte(rotor.reflecting() ? 'R'
+                           : rotor.rotates() ? 'M' : 'N');
+            writeString(body, rotor.notches());
+            for (int image : rotor.permutation().table()) {
+                body.writeInt(image);
+            }
+        }
+        body.flush();
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeInt(bytes.size());
+        header.writeInt((int) crc.getValue());
+        bytes.writeTo(header);
+        header.flush();
+    }
+
+    /** Write S to OUT as an int length followed by its chars. */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        out.writeInt(s.length());
+        out.writeChars(s);
+    }
+
+    /** Return true iff IN, which must support mark(), starts with the
+     *  magic number of an image.  IN is left where it was, so that the
+     *  image or configuration file may then be read from it. */
+    static boolean isImage(InputStream in) throws IOException {
+        in.mark(Integer.BYTES);
+        try {
+            return new DataInputStream(in).readInt() == MAGIC;
+        } catch (EOFException excp) {
+            return false;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /** Return the machine described by the image in the file named NAME,
+     *  which is memory-mapped if MAPPED. */
+    static Machine read(String name, boolean mapped) {
+        try {
+            if (mapped) {
+                try (FileChannel channel =
+                         FileChannel.open(Paths.get(name),
+                                          StandardOpenOption.READ)) {
+                    return read(channel.map(FileChannel.MapMode.READ_ONLY,
+                                            0, channel.size()));
+                }
+            }
+            return read(ByteBuffer.wrap(Files.readAllBytes(Paths.get(name))));
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+    }
+
+    /** Return the machine described by the image in IMAGE, from its
+     *  position to its limit. */
+    static Machine read(ByteBuffer image) {
+        try {
+            if (image.remaining() < HEADER_SIZE || image.getInt() != MAGIC) {
+                throw error("not a configuration image");
+            }
+            int version = image.getInt();
+            if (version != VERSION) {
+                throw error("unsupported configuration image version %d",
+                            version);
+            }
+            int length = image.getInt();
+            int checksum = image.getInt();
+            if (length != image.remaining()) {
+                throw error("configuration image has the wrong length");
+            }
+            CRC32 crc = new CRC32();
+            crc.update(image.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                throw error("configuration image checksum mismatch");
+            }
+            Alphabet alphabet = new Alphabet(readString(image));
+            int numRotors = image.getInt();
+            int numPawls = image.getInt();
+            int count = image.getInt();
+            ArrayList<Rotor> rotors = new ArrayList<>();
+            int[] table = new int[alphabet.size()];
+            for (int k = 0; k < count; k += 1) {
+                String name = readString(image);
+                byte type = image.get();
+                String notches = readString(image);
+                image.asIntBuffer().get(table);
+                image.position(image.position() + 4 * table.length);
+                Permutation perm = new Permutation(table, alphabet);
+                if (type == 'R') {
+                    rotors.add(new Reflector(name, perm));
+                } else if (type == 'N') {
+                    rotors.add(new FixedRotor(name, perm));
+                } else if (type == 'M') {
+                    rotors.add(new MovingRotor(name, perm, notches));
+                } else {
+                    throw error("bad rotor type in configuration image");
+                }
+            }
+            if (image.hasRemaining()) {
+                throw error("configuration image has trailing bytes");
+            }
+            return new Machine(alphabet, numRotors, numPawls, rotors);
+        } catch (BufferUnderflowException excp) {
+            throw error("configuration image truncated");
+        }
+    }
+
+    /** Return the string at the position of IMAGE, advancing past it. */
+    private static String readString(ByteBuffer image) {
+        int length = image.getInt();
+        if (length < 0 || 2L * length > image.remaining()) {
+            throw error("configuration image truncated");
+        }
+        char[] chars = new char[length];
+        image.asCharBuffer().get(chars);
+        image.position(image.position() + 2 * length);
+        return new String(chars);
+    }
+
+    /** First four bytes of an image: "ENIG". */
+    static final int MAGIC = 0x454e4947;
+    /** Version of the image format written by write(). */
+    static final int VERSION = 1;
+    /** Size of the header preceding the body. */
+    static final int HEADER_SIZE = 16;
+}
@@ -0,0 +1,110 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigImage class.
+ *  @author James Nho Nguyen
+ */
+public class ConfigImageTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return an image of MACHINE. */
+    private static byte[] image(Machine machine) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ConfigImage.write(machine, out);
+        return out.toByteArray();
+    }
+
+    /** Return the conversion of MSG by MACHINE at the usual settings. */
+    private static String convert(Machine machine, String msg) {
+        machine.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        machine.setRotors("AXLE");
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP)", UPPER));
+        return machine.convert(msg);
+    }
+
+    /** Return a stream of BYTES that, like a pipe, never reports any
+     *  bytes as available, and supports mark(). */
+    private static InputStream pipe(byte[] bytes) {
+        return new BufferedInputStream(new ByteArrayInputStream(bytes) {
+            @Override
+            public int available() {
+                return 0;
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        });
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Machine loaded =
+            ConfigImage.read(ByteBuffer.wrap(image(navalMachine())));
+        assertEquals(5, loaded.numRotors());
+        assertEquals(3, loaded.numPawls());
+        assertEquals(UPPER_STRING.length(), loaded.alphabet().size());
+        assertEquals("ZM", loaded.getRotorMap().get("VI").notches());
+        assertTrue(loaded.getRotorMap().get("B").reflecting());
+        assertFalse(loaded.getRotorMap().get("Beta").rotates());
+        String msg = "FROMHISSHOULDERHIAWATHAQQQQQQQQQQQQQQQQQQQQQQQQQQQ";
+        assertEquals(convert(navalMachine(), msg), convert(loaded, msg));
+    }
+
+    @Test
+    public void testCorruptImages() throws IOException {
+        byte[] good = image(navalMachine());
+        byte[] flipped = good.clone();
+        flipped[good.length / 2] ^= 1;
+        byte[] version = good.clone();
+        version[7] = 2;
+        byte[] truncated = new byte[good.length - 1];
+        System.arraycopy(good, 0, truncated, 0, truncated.length);
+        for (byte[] bad : new byte[][] { flipped, version, truncated }) {
+            try {
+                ConfigImage.read(ByteBuffer.wrap(bad));
+                fail("corrupt image accepted");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void testIsImage() throws IOException {
+        byte[] good = image(navalMachine());
+        InputStream in = pipe(good);
+        assertTrue(ConfigImage.isImage(in));
+        assertArrayEquals(good, in.readAllBytes());
+        byte[] text = "ABCDEFGH\n5 3\n".getBytes();
+        in = pipe(text);
+        assertFalse(ConfigImage.isImage(in));
+        assertArrayEquals(text, in.readAllBytes());
+        for (int n = 0; n < Integer.BYTES; n += 1) {
+            in = pipe(Arrays.copyOf(good, n));
+            assertFalse(ConfigImage.isImage(in));
+            assertEquals(n, in.readAllBytes().length);
+        }
+    }
+}
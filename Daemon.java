@@ -0,0 +1,420 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** A long-lived server converting jobs sent to it over a Unix domain
+ *  socket.  The machines of the configurations it has read are kept
+ *  between jobs, so a job costs neither JVM startup nor the reading of
+ *  its configuration, and settings lines are set up once per
+ *  configuration as by Main.  Each connection is served in a thread of
+ *  its own, as SessionServer serves sessions, so idle connections cost
+ *  no worker; a limited number of jobs run at once, and the others wait
+ *  for one to finish.  On each connection, a client sends any number of
+ *  jobs, each answered before the next is read.  A job is a header of
+ *  lines NAME VALUE ended by an empty line, then the payload:
+ *      config PATH     configuration file or image (required)
+ *      input PATH      input file; otherwise the payload is the input
+ *      output PATH     output file; otherwise the output is returned
+ *      bytes SETTINGS  convert raw bytes, as --bytes=SETTINGS does
+ *      length N        number of payload bytes (default 0)
+ *  Paths are taken relative to the server's working directory.  The
+ *  reply is a header of "status CODE", CODE being the exit code the
+ *  command line would give, then "error MESSAGE" if CODE is not 0, then
+ *  "length N", and an empty line, followed by N bytes of output.  A job
+ *  that fails partway returns (or leaves in its output file) the output
+ *  converted before the error, as the command line does.  Header lines
+ *  and text are UTF-8.
+ *  @author James Nho Nguyen
+ */
+class Daemon {
+
+    /** A server listening on the Unix domain socket SOCKET, which is
+     *  replaced if it exists, running up to THREADS jobs at once.
+     *  Up to CACHESIZE settings lines are cached per configuration, their
+     *  states specialized by SPECIALIZER unless it is null. */
+    Daemon(Path socket, int threads, int cacheSize,
+           Specializer specializer) {
+        _socket = socket;
+        _cacheSize = cacheSize;
+        _specializer = specializer;
+        try {
+            Files.deleteIfExists(socket);
+            _server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            _server.bind(UnixDomainSocketAddress.of(socket));
+        } catch (IOException | UnsupportedOperationException excp) {
+            throw error("could not listen on %s: %s", socket,
+                        excp.getMessage());
+        }
+        _connections = SessionServer.sessionThreads();
+        _running = new Semaphore(threads);
+    }
+
+    /** Accept and serve connections until close() is called. */
+    void serve() {
+        try {
+            while (true) {
+                SocketChannel client = _server.accept();
+                _connections.execute(() -> serve(client));
+            }
+        } catch (ClosedChannelException excp) {
+            return;
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        } finally {
+            _connections.shutdown();
+        }
+    }
+
+    /** Stop accepting connections and remove my socket.  Jobs already
+     *  started are finished. */
+    void close() {
+        try {
+            _server.close();
+            Files.deleteIfExists(_socket);
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Return the number of jobs answered. */
+    long jobs() {
+        return _jobs.get();
+    }
+
+    /** Serve the jobs sent on CLIENT until it closes its end. */
+    private void serve(SocketChannel client) {
+        try (client) {
+            InputStream in =
+                new BufferedInputStream(Channels.newInputStream(client));
+            OutputStream out =
+                new BufferedOutputStream(Channels.newOutputStream(client));
+            for (Map<String, String> job = readHeader(in); job != null;
+                 job = readHeader(in)) {
+                int length;
+                try {
+                    length = length(job);
+                } catch (EnigmaException excp) {
+                    reply(out, 1, excp.getMessage(), EMPTY);
+                    return;
+                }
+                byte[] payload = in.readNBytes(length);
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                try {
+                    runLimited(job, payload, output);
+                } catch (EnigmaException excp) {
+                    reply(out, 1, excp.getMessage(), output.toByteArray());
+                    continue;
+                } catch (RuntimeException excp) {
+                    reply(out, 1, "internal error: " + excp,
+                          output.toByteArray());
+                    continue;
+                }
+                reply(out, 0, null, output.toByteArray());
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Return the payload length given by JOB. */
+    private static int length(Map<String, String> job) {
+        String length = job.getOrDefault("length", "0");
+        try {
+            int n = Integer.parseInt(length);
+            if (n >= 0) {
+                return n;
+            }
+        } catch (NumberFormatException excp) {
+            /* Reported below. */
+        }
+        throw error("bad length: %s", length);
+    }
+
+    /** Perform run(JOB, PAYLOAD, RESULT), once fewer than the limit of
+     *  jobs given to my constructor are running. */
+    private void runLimited(Map<String, String> job, byte[] payload,
+                            ByteArrayOutputStream result) {
+        try {
+            _running.acquire();
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        }
+        try {
+            run(job, payload, result);
+        } finally {
+            _running.release();
+        }
+    }
+
+    /** Run JOB, whose payload is PAYLOAD, writing its output to RESULT
+     *  unless JOB names an output file.  On an error, RESULT (or the
+     *  output file) holds the output converted before it, as the command
+     *  line leaves it. */
+    private void run(Map<String, String> job, byte[] payload,
+                     ByteArrayOutputStream result) {
+        for (String name : job.keySet()) {
+            if (!FIELDS.contains(" " + name + " ")) {
+                throw error("unknown job field: %s", name);
+            }
+        }
+        String config = job.get("config");
+        if (config == null) {
+            throw error("job has no config");
+        }
+        Config entry = config(config);
+        Machine machine = entry.take();
+        try {
+            if (job.containsKey("bytes")) {
+                runBytes(machine, entry, job, payload, result);
+            } else {
+                runText(machine, entry, job, payload, result);
+            }
+        } finally {
+            entry.give(machine);
+        }
+    }
+
+    /** Convert the messages of JOB, whose payload is PAYLOAD, with
+     *  MACHINE, of configuration ENTRY, as Main.process does, writing the
+     *  output to RESULT if JOB names no output file. */
+    private void runText(Machine machine, Config entry,
+                         Map<String, String> job, byte[] payload,
+                         ByteArrayOutputStream result) {
+        if (!machine.alphabet().isBmp()) {
+            throw error("messages need an alphabet of 16-bit characters");
+        }
+        String input = job.get("input"), output = job.get("output");
+        int size = input != null ? MessageStream.BUFFER_SIZE
+            : Math.min(MessageStream.BUFFER_SIZE,
+                       Math.max(MIN_BUFFER, payload.length));
+        try (Reader reader = input == null
+                 ? new InputStreamReader(new ByteArrayInputStream(payload),
+                                         StandardCharsets.UTF_8)
+                 : new InputStreamReader(open(input));
+             Writer writer = output == null
+                 ? new OutputStreamWriter(result, StandardCharsets.UTF_8)
+                 : new BufferedWriter(new OutputStreamWriter(create(output)),
+                                      MessageStream.BUFFER_SIZE)) {
+            new MessageStream(machine,
+                (line) -> Main.applySettings(machine, line, entry._cache,
+                                             _specializer),
+                reader, writer, MessageStream.FlushPolicy.BUFFER,
+                new GroupFormatter(), size).process();
+        } catch (IOException excp) {
+            throw error("could not close output");
+        }
+    }
+
+    /** Convert the bytes of JOB, whose payload is PAYLOAD, with MACHINE,
+     *  of configuration ENTRY, as Main.processBytes does, writing the
+     *  output to RESULT if JOB names no output file. */
+    private void runBytes(Machine machine, Config entry,
+                          Map<String, String> job, byte[] payload,
+                          ByteArrayOutputStream result) {
+        if (!machine.alphabet().isBytes()) {
+            throw error("--bytes requires a %d-symbol configuration",
+                        Alphabet.BYTES);
+        }
+        Main.applySettings(machine, job.get("bytes"), entry._cache,
+                           _specializer);
+        String input = job.get("input"), output = job.get("output");
+        try (InputStream in = input == null
+                 ? new ByteArrayInputStream(payload) : open(input);
+             OutputStream out = output == null ? result : create(output)) {
+            new ByteStream(machine).process(in, out);
+        } catch (IOException excp) {
+            throw error("could not close output");
+        }
+    }
+
+    /** Return a stream reading the file NAME. */
+    private static InputStream open(String name) {
+        try {
+            return new FileInputStream(name);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a stream writing the file NAME, which is replaced. */
+    private static OutputStream create(String name) {
+        try {
+            return new FileOutputStream(name);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return the configuration read from the file NAME, reading it
+     *  again if it has changed since it was last read. */
+    private Config config(String name) {
+        FileTime modified;
+        try {
+            modified = Files.getLastModifiedTime(Path.of(name));
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", name);
+        }
+        synchronized (_configs) {
+            Config entry = _configs.get(name);
+            if (entry != null && entry._modified.equals(modified)) {
+                return entry;
+            }
+        }
+        Config entry = new Config(Main.readMachine(name, false), modified,
+                                  _cacheSize);
+        synchronized (_configs) {
+            _configs.put(name, entry);
+        }
+        return entry;
+    }
+
+    /** Return the next header read from IN as a map from field name to
+     *  value, or null if IN ends before the header does. */
+    private static Map<String, String> readHeader(InputStream in)
+        throws IOException {
+        Map<String, String> header = new HashMap<>();
+        for (String line = readLine(in); line != null; line = readLine(in)) {
+            if (line.isEmpty()) {
+                return header;
+            }
+            int space = line.indexOf(' ');
+            if (space < 0) {
+                header.put(line, "");
+            } else {
+                header.put(line.substring(0, space),
+                           line.substring(space + 1));
+            }
+        }
+        return null;
+    }
+
+    /** Return the next line of IN without its terminator ("\n" or
+     *  "\r\n"), or null if IN ends before the terminator. */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int c = in.read(); c != '\n'; c = in.read()) {
+            if (c < 0) {
+                return null;
+            }
+            line.write(c);
+        }
+        String result = line.toString(StandardCharsets.UTF_8);
+        return result.endsWith("\r")
+            ? result.substring(0, result.length() - 1) : result;
+    }
+
+    /** Write a reply with status STATUS, error MESSAGE unless it is
+     *  null, and output OUTPUT to OUT, and flush it.  The job is counted
+     *  first, so that its client sees it counted once it has a reply. */
+    private void reply(OutputStream out, int status, String message,
+                       byte[] output) throws IOException {
+        _jobs.incrementAndGet();
+        StringBuilder header = new StringBuilder();
+        header.append("status ").append(status).append('\n');
+        if (message != null) {
+            header.append("error ")
+                .append(message.replace('\n', ' ')).append('\n');
+        }
+        header.append("length ").append(output.length).append("\n\n");
+        out.write(header.toString().getBytes(StandardCharsets.UTF_8));
+        out.write(output);
+        out.flush();
+    }
+
+    /** A configuration read by the server, with spare machines made
+     *  from it and the states of the settings lines used with it. */
+    private static final class Config {
+
+        /** A configuration whose machine is MACHINE, read from a file last
+         *  modified at MODIFIED, caching up to CACHESIZE settings. */
+        Config(Machine machine, FileTime modified, int cacheSize) {
+            _prototype = machine;
+            _modified = modified;
+            _cache = new SettingsCache(cacheSize);
+        }
+
+        /** Return a machine like my prototype, for use by one job. */
+        Machine take() {
+            Machine machine = _spare.poll();
+            if (machine == null) {
+                machine = new Machine(_prototype.alphabet(),
+                                      _prototype.numRotors(),
+                                      _prototype.numPawls(),
+                                      _prototype.getRotorMap().values());
+            }
+            return machine;
+        }
+
+        /** Return MACHINE, from take(), for use by later jobs. */
+        void give(Machine machine) {
+            _spare.offer(machine);
+        }
+
+        /** Machine whose rotors the machines handed out share. */
+        private final Machine _prototype;
+        /** Modification time of the file the configuration was read
+         *  from. */
+        private final FileTime _modified;
+        /** States of recently used settings lines. */
+        private final SettingsCache _cache;
+        /** Machines not in use by any job. */
+        private final ConcurrentLinkedQueue<Machine> _spare =
+            new ConcurrentLinkedQueue<>();
+    }
+
+    /** Names of the header fields of a job, each between spaces. */
+    private static final String FIELDS = " config input output bytes length ";
+    /** Smallest size of the buffers used for inline input. */
+    private static final int MIN_BUFFER = 256;
+    /** Output of a job that returns none. */
+    private static final byte[] EMPTY = new byte[0];
+
+    /** Path of my socket. */
+    private final Path _socket;
+    /** Channel on which connections are accepted. */
+    private final ServerSocketChannel _server;
+    /** Runs the thread serving each connection. */
+    private final ExecutorService _connections;
+    /** Permits for the jobs that may run at once. */
+    private final Semaphore _running;
+    /** Number of settings lines cached per configuration. */
+    private final int _cacheSize;
+    /** Specializes newly set up states, or null. */
+    private final Specializer _specializer;
+    /** Configurations read, by file name. */
+    private final HashMap<String, Config> _configs = new HashMap<>();
+    /** Number of jobs answered. */
+    private final AtomicLong _jobs = new AtomicLong();
+}
@@ -0,0 +1,261 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Daemon class.
+ *  @author James Nho Nguyen
+ */
+public class DaemonTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Input of the text jobs. */
+    private static final String INPUT =
+        "* R1 F1 M1 M2 M3 AXLE (AB) (CD)\nHELLO WORLD\n\nTHE END\n"
+        + "* R2 F2 M4 M5 M6 QQQQ\nAGAIN\n";
+
+    /** Start a daemon in a directory of its own, with an image of a
+     *  machine over UPPER written there. */
+    @Before
+    public void setUp() throws IOException {
+        _dir = Files.createTempDirectory("daemon");
+        _config = _dir.resolve("config.img");
+        _machine = new RotorGenerator(UPPER, 24).machine(5, 3, 2, 2, 6, 1);
+        try (OutputStream out = new BufferedOutputStream(
+                 new FileOutputStream(_config.toString()))) {
+            ConfigImage.write(_machine, out);
+        }
+        _daemon = new Daemon(_dir.resolve("socket"), 4, 16, null);
+        _server = new Thread(_daemon::serve);
+        _server.start();
+    }
+
+    /** Stop the daemon and remove its directory. */
+    @After
+    public void tearDown() throws Exception {
+        _daemon.close();
+        _server.join();
+        try (var files = Files.list(_dir)) {
+            for (Path file : files.toArray(Path[]::new)) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(_dir);
+    }
+
+    /** Return a connection to the daemon. */
+    private SocketChannel connect() throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.connect(UnixDomainSocketAddress.of(_dir.resolve("socket")));
+        return channel;
+    }
+
+    /** Send the job with header lines HEADER and payload PAYLOAD on
+     *  CHANNEL, and return the status, error (or null) and output of the
+     *  reply. */
+    private static String[] send(SocketChannel channel, String header,
+                                 String payload) throws IOException {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        OutputStream out = Channels.newOutputStream(channel);
+        out.write((header + "length " + bytes.length + "\n\n")
+                  .getBytes(StandardCharsets.UTF_8));
+        out.write(bytes);
+        out.flush();
+        DataInputStream in =
+            new DataInputStream(Channels.newInputStream(channel));
+        String[] result = new String[3];
+        int length = -1;
+        for (String line = readLine(in); !line.isEmpty();
+             line = readLine(in)) {
+            String value = line.substring(line.indexOf(' ') + 1);
+            if (line.startsWith("status ")) {
+                result[0] = value;
+            } else if (line.startsWith("error ")) {
+                result[1] = value;
+            } else if (line.startsWith("length ")) {
+                length = Integer.parseInt(value);
+            }
+        }
+        byte[] output = new byte[length];
+        in.readFully(output);
+        result[2] = new String(output, StandardCharsets.UTF_8);
+        return result;
+    }
+
+    /** Return the next line of IN, without its newline. */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int c = in.read(); c != '\n'; c = in.read()) {
+            assertTrue("reply ended early", c >= 0);
+            line.write(c);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Return the output Main would give for INPUT with my machine. */
+    private String expected(String input) {
+        Machine mach = _machine;
+        StringWriter output = new StringWriter();
+        SettingsCache cache = new SettingsCache(0);
+        new MessageStream(mach,
+            (line) -> Main.applySettings(mach, line, cache, null),
+            new StringReader(input), output,
+            MessageStream.FlushPolicy.BUFFER).process();
+        return output.toString();
+    }
+
+    @Test
+    public void testInlineJobs() throws IOException {
+        try (SocketChannel channel = connect()) {
+            String header = "config " + _config + "\n";
+            for (int k = 0; k < 3; k += 1) {
+                String[] reply = send(channel, header, INPUT);
+                assertEquals("0", reply[0]);
+                assertNull(reply[1]);
+                assertEquals(expected(INPUT), reply[2]);
+            }
+        }
+        assertEquals(3, _daemon.jobs());
+    }
+
+    @Test
+    public void testFileJob() throws IOException {
+        Path input = _dir.resolve("input"), output = _dir.resolve("output");
+        Files.writeString(input, INPUT);
+        try (SocketChannel channel = connect()) {
+            String[] reply = send(channel, "config " + _config + "\ninput "
+                                  + input + "\noutput " + output + "\n", "");
+            assertEquals("0", reply[0]);
+            assertEquals("", reply[2]);
+        }
+        assertEquals(expected(INPUT), Files.readString(output));
+    }
+
+    @Test
+    public void testErrors() throws IOException {
+        try (SocketChannel channel = connect()) {
+            String header = "config " + _config + "\n";
+            String[] reply = send(channel, header, "* R1 F1 M1 M2 X9 AAAA\n");
+            assertEquals("1", reply[0]);
+            assertNotNull(reply[1]);
+            reply = send(channel, "config " + _dir.resolve("none") + "\n",
+                         INPUT);
+            assertEquals("1", reply[0]);
+            reply = send(channel, "colour blue\n", "");
+            assertEquals("1", reply[0]);
+            reply = send(channel, header, INPUT);
+            assertEquals("0", reply[0]);
+            assertEquals(expected(INPUT), reply[2]);
+        }
+    }
+
+    @Test
+    public void testPartialOutput() throws IOException {
+        String bad = INPUT + "* R1 F1 M1 M2 X9 AAAA\nMORE\n";
+        Path input = _dir.resolve("input"), output = _dir.resolve("output");
+        Files.writeString(input, bad);
+        try (SocketChannel channel = connect()) {
+            String[] reply = send(channel, "config " + _config + "\n", bad);
+            assertEquals("1", reply[0]);
+            assertNotNull(reply[1]);
+            assertEquals(expected(INPUT), reply[2]);
+            reply = send(channel, "config " + _config + "\ninput " + input
+                         + "\noutput " + output + "\n", "");
+            assertEquals("1", reply[0]);
+            assertEquals("", reply[2]);
+        }
+        assertEquals(expected(INPUT), Files.readString(output));
+    }
+
+    @Test
+    public void testConcurrentClients() throws Exception {
+        String want = expected(INPUT);
+        List<Thread> clients = new ArrayList<>();
+        List<String> failures = new ArrayList<>();
+        for (int c = 0; c < 8; c += 1) {
+            Thread client = new Thread(() -> {
+                try (SocketChannel channel = connect()) {
+                    for (int k = 0; k < 20; k += 1) {
+                        String[] reply =
+                            send(channel, "config " + _config + "\n", INPUT);
+                        if (!reply[0].equals("0") || !reply[2].equals(want)) {
+                            synchronized (failures) {
+                                failures.add(reply[1]);
+                            }
+                        }
+                    }
+                } catch (IOException excp) {
+                    synchronized (failures) {
+                        failures.add(excp.getMessage());
+                    }
+                }
+            });
+            clients.add(client);
+            client.start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        assertEquals(List.of(), failures);
+        assertEquals(160, _daemon.jobs());
+    }
+
+    @Test
+    public void testIdleConnections() throws IOException {
+        List<SocketChannel> idle = new ArrayList<>();
+        try {
+            for (int c = 0; c < 6; c += 1) {
+                idle.add(connect());
+            }
+            try (SocketChannel channel = connect()) {
+                String[] reply =
+                    send(channel, "config " + _config + "\n", INPUT);
+                assertEquals("0", reply[0]);
+                assertEquals(expected(INPUT), reply[2]);
+            }
+        } finally {
+            for (SocketChannel channel : idle) {
+                channel.close();
+            }
+        }
+    }
+
+    /** Directory holding the socket and files of a test. */
+    private Path _dir;
+    /** Image of _machine. */
+    private Path _config;
+    /** Machine whose image the jobs use. */
+    private Machine _machine;
+    /** Daemon under test. */
+    private Daemon _daemon;
+    /** Thread running _daemon. */
+    private Thread _server;
+}
@@ -0,0 +1,103 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Lays out converted message characters in groups, as in "QVPQS OKOIL
+ *  PUBKJ", optionally wrapping long lines.  Characters are copied into a
+ *  caller's buffer a chunk at a time; the position within the current line
+ *  is carried from one chunk to the next.
+ *  @author James Nho Nguyen
+ */
+class GroupFormatter {
+
+    /** A formatter for groups of WIDTH characters separated by spaces, with
+     *  no more than WRAP characters per output line.  WIDTH 0 means no
+     *  grouping and WRAP 0 means no wrapping.  Lines are broken with
+     *  NEWLINE. */
+    GroupFormatter(int width, int wrap, String newline) {
+        if (width < 0 || wrap < 0) {
+            throw error("group width and wrap length must not be negative");
+        }
+        _width = width == 0 ? Integer.MAX_VALUE : width;
+        if (wrap == 0) {
+            _perLine = Long.MAX_VALUE;
+        } else if (width == 0) {
+            _width = wrap;
+            _perLine = 1;
+        } else {
+            _perLine = Math.max(1, (wrap + 1) / (width + 1));
+        }
+        _newline = newline.toCharArray();
+        _gap = Math.max(1, _newline.length);
+    }
+
+    /** The usual formatter: groups of five, no wrapping. */
+    GroupFormatter() {
+        this(5, 0, System.lineSeparator());
+    }
+
+    /** A formatter with the same layout as FROM, at the start of a
+     *  line. */
+    private GroupFormatter(GroupFormatter from) {
+        _width = from._width;
+        _perLine = from._perLine;
+        _newline = from._newline;
+        _gap = from._gap;
+    }
+
+    /** Return a formatter with my layout, at the start of a line, that may
+     *  be used independently of me. */
+    GroupFormatter copy() {
+        return new GroupFormatter(this);
+    }
+
+    /** Start a new message line. */
+    void startLine() {
+        _column = 0;
+        _groups = 0;
+    }
+
+    /** Return an upper bound on the number of characters format() adds
+     *  for N message characters. */
+    int maxLength(int n) {
+        int groups = _width == Integer.MAX_VALUE ? 1 : n / _width + 1;
+        return n + groups * _gap;
+    }
+
+    /** Copy SRC[FROM .. TO-1] to DST starting at AT, inserting separators
+     *  between groups.  Returns the index in DST just after the last
+     *  character written, which is at most AT + maxLength(TO - FROM). */
+    int format(char[] src, int from, int to, char[] dst, int at) {
+        while (from < to) {
+            if (_column == _width) {
+                _groups += 1;
+                _column = 0;
+                if (_groups % _perLine == 0) {
+                    System.arraycopy(_newline, 0, dst, at, _newline.length);
+                    at += _newline.length;
+                } else {
+                    dst[at++] = ' ';
+                }
+            }
+            int n = Math.min(to - from, _width - _column);
+            System.arraycopy(src, from, dst, at, n);
+            at += n;
+            from += n;
+            _column += n;
+        }
+        return at;
+    }
+
+    /** Number of characters per group. */
+    private int _width;
+    /** Number of groups per output line. */
+    private final long _perLine;
+    /** Line separator used when wrapping. */
+    private final char[] _newline;
+    /** Largest number of characters in a separator. */
+    private final int _gap;
+    /** Number of characters in the current group. */
+    private int _column;
+    /** Number of complete groups on the current message line. */
+    private long _groups;
+}
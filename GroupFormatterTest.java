@@ -0,0 +1,45 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the GroupFormatter class.
+ *  @author James Nho Nguyen
+ */
+public class GroupFormatterTest {
+
+    /** Return MSG formatted by FORMATTER, fed to it in chunks of at most
+     *  CHUNK characters. */
+    private String format(GroupFormatter formatter, String msg, int chunk) {
+        char[] src = msg.toCharArray();
+        char[] dst = new char[formatter.maxLength(src.length) + src.length];
+        int at = 0;
+        formatter.startLine();
+        for (int k = 0; k < src.length; k += chunk) {
+            at = formatter.format(src, k, Math.min(src.length, k + chunk),
+                                  dst, at);
+        }
+        return new String(dst, 0, at);
+    }
+
+    @Test
+    public void testGroupsOfFive() {
+        GroupFormatter formatter = new GroupFormatter();
+        assertEquals("", format(formatter, "", 3));
+        assertEquals("ABCDE", format(formatter, "ABCDE", 3));
+        assertEquals("ABCDE F", format(formatter, "ABCDEF", 1));
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW",
+                format(formatter, "QVPQSOKOILPUBKJZPISFXDW", 7));
+    }
+
+    @Test
+    public void testWidthAndWrap() {
+        GroupFormatter formatter = new GroupFormatter(3, 8, "\n");
+        assertEquals("ABC DEF\nGHI JKL\nM",
+                format(formatter, "ABCDEFGHIJKLM", 2));
+        formatter = new GroupFormatter(0, 4, "\n");
+        assertEquals("ABCD\nEFGH\nI", format(formatter, "ABCDEFGHI", 5));
+        formatter = new GroupFormatter(0, 0, "\n");
+        assertEquals("ABCDEFGHI", format(formatter, "ABCDEFGHI", 5));
+    }
+}
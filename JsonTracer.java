@@ -0,0 +1,117 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A Tracer that writes one JSON object per line for each character, for
+ *  example
+ *      {"n":0,"pos":"AXLF","in":"Y","path":"FKRC...J","out":"Z"}
+ *  where n counts the characters traced, pos gives the rotor positions
+ *  (reflector excluded), and path gives the character after the plugboard
+ *  and after each rotor in turn.  Lines are assembled in a reusable
+ *  buffer and written in large blocks.
+ *  @author James Nho Nguyen
+ */
+class JsonTracer implements Tracer {
+
+    /** A tracer writing characters of ALPHABET to OUTPUT. */
+    JsonTracer(Alphabet alphabet, Writer output) {
+        _alphabet = alphabet;
+        _output = output;
+    }
+
+    @Override
+    public void start(int[] positions, int c) {
+        append("{\"n\":");
+        append(Long.toString(_count));
+        append(",\"pos\":\"");
+        for (int r = 1; r < positions.length; r += 1) {
+            appendChar(positions[r]);
+        }
+        append("\",\"in\":\"");
+        appendChar(c);
+        append("\",\"path\":\"");
+        _count += 1;
+    }
+
+    @Override
+    public void hop(int c) {
+        appendChar(c);
+    }
+
+    @Override
+    public void end(int c) {
+        append("\",\"out\":\"");
+        appendChar(c);
+        append("\"}\n");
+        if (_length > BUFFER_SIZE) {
+            drain();
+        }
+    }
+
+    @Override
+    public void flush() {
+        drain();
+        try {
+            _output.flush();
+        } catch (IOException excp) {
+            throw error("could not write trace: %s", excp.getMessage());
+        }
+    }
+
+    /** Append the alphabet character with index C, escaped for JSON. */
+    private void appendChar(int c) {
+        char ch = _alphabet.toChar(c);
+        if (ch == '"' || ch == '\\') {
+            append("\\");
+            append(String.valueOf(ch));
+        } else if (ch < ' ') {
+            append(String.format("\\u%04x", (int) ch));
+        } else {
+            reserve(1);
+            _buffer[_length++] = ch;
+        }
+    }
+
+    /** Append S. */
+    private void append(String s) {
+        reserve(s.length());
+        s.getChars(0, s.length(), _buffer, _length);
+        _length += s.length();
+    }
+
+    /** Make room for N more characters in _buffer. */
+    private void reserve(int n) {
+        if (_length + n > _buffer.length) {
+            _buffer = Arrays.copyOf(_buffer,
+                    Math.max(_buffer.length * 2, _length + n));
+        }
+    }
+
+    /** Write _buffer to _output. */
+    private void drain() {
+        try {
+            _output.write(_buffer, 0, _length);
+            _length = 0;
+        } catch (IOException excp) {
+            throw error("could not write trace: %s", excp.getMessage());
+        }
+    }
+
+    /** Size above which the buffer is written out. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Alphabet of the traced machine. */
+    private final Alphabet _alphabet;
+    /** Destination of the trace. */
+    private final Writer _output;
+    /** Trace lines waiting to be written. */
+    private char[] _buffer = new char[2 * BUFFER_SIZE];
+    /** Number of characters in _buffer. */
+    private int _length;
+    /** Number of characters traced so far. */
+    private long _count;
+}
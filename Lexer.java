@@ -0,0 +1,180 @@
+package enigma;
+
+/** Splits configuration files and settings lines into tokens in a single
+ *  pass over their text.  Tokens are separated by whitespace.  A cycle,
+ *  from '(' to the next ')' on the same line, is always a token of its
+ *  own; any other token is a word, which ends at whitespace or '('.
+ *  Errors give the line and column of the token they concern.
+ *  @author James Nho Nguyen
+ */
+class Lexer {
+
+    /** A lexer for TEXT, whose first line is line number LINE.  A LINE of
+     *  0 means that line numbers are unknown, and errors give only a
+     *  column. */
+    Lexer(String text, int line) {
+        _text = text;
+        _line = line;
+        _markLine = line;
+        _markColumn = 1;
+    }
+
+    /** Return true iff there is another token. */
+    boolean hasNext() {
+        skipWhitespace();
+        return _pos < _text.length();
+    }
+
+    /** Return true iff the next token is a cycle. */
+    boolean nextIsCycle() {
+        return hasNext() && _text.charAt(_pos) == '(';
+    }
+
+    /** Return the next token, which must be a word.  WHAT describes the
+     *  expected word in the error otherwise. */
+    String next(String what) {
+        if (!hasNext() || _text.charAt(_pos) == '(') {
+            mark();
+            throw error("expected %s", what);
+        }
+        mark();
+        int start = _pos;
+        while (_pos < _text.length()) {
+            char c = _text.charAt(_pos);
+            if (c == '(' || Character.isWhitespace(c)) {
+                break;
+            }
+            _pos += 1;
+        }
+        return _text.substring(start, _pos);
+    }
+
+    /** Return the value of the next token, which must be a non-negative
+     *  decimal integer.  WHAT describes the expected integer in the error
+     *  otherwise. */
+    int nextInt(String what) {
+        String word = next(what);
+        if (word.length() > MAX_DIGITS) {
+            throw error("expected %s", what);
+        }
+        int result = 0;
+        for (int k = 0; k < word.length(); k += 1) {
+            char c = word.charAt(k);
+            if (c < '0' || c > '9') {
+                throw error("expected %s", what);
+            }
+            result = 10 * result + c - '0';
+        }
+        return result;
+    }
+
+    /** Return the rest of the current line, without its terminator, and
+     *  move to the start of the next one. */
+    String nextLine() {
+        mark();
+        int start = _pos;
+        while (_pos < _text.length() && !atLineEnd()) {
+            _pos += 1;
+        }
+        String result = _text.substring(start, _pos);
+        skipLineEnd();
+        return result;
+    }
+
+    /** Return the text of the cycle tokens that come next, possibly none
+     *  and possibly on several lines, as one string in the form accepted by
+     *  Permutation. */
+    String cycles() {
+        if (!nextIsCycle()) {
+            mark();
+            return "";
+        }
+        int start = _pos, end = _pos;
+        int startLine = _line, startColumn = _pos - _lineStart + 1;
+        while (nextIsCycle()) {
+            mark();
+            while (_pos < _text.length() && _text.charAt(_pos) != ')'
+                   && !atLineEnd()) {
+                _pos += 1;
+            }
+            if (_pos == _text.length() || _text.charAt(_pos) != ')') {
+                throw error("unterminated cycle");
+            }
+            _pos += 1;
+            end = _pos;
+        }
+        _markLine = startLine;
+        _markColumn = startColumn;
+        return _text.substring(start, end);
+    }
+
+    /** Return an exception whose message is formed from MSGFORMAT and ARGS
+     *  as for String.format, preceded by the position of the last token
+     *  returned. */
+    EnigmaException error(String msgFormat, Object... args) {
+        String where = _markLine > 0
+            ? String.format("line %d, column %d: ", _markLine, _markColumn)
+            : String.format("column %d: ", _markColumn);
+        return new EnigmaException(where + String.format(msgFormat, args));
+    }
+
+    /** Record the current position as that of the last token. */
+    private void mark() {
+        _markLine = _line;
+        _markColumn = _pos - _lineStart + 1;
+    }
+
+    /** Return true iff the current character ends a line. */
+    private boolean atLineEnd() {
+        char c = _text.charAt(_pos);
+        return c == '\n' || c == '\r';
+    }
+
+    /** Move past the line terminator ("\n", "\r\n" or "\r") at the current
+     *  position, if any. */
+    private void skipLineEnd() {
+        if (_pos == _text.length()) {
+            return;
+        }
+        if (_text.charAt(_pos) == '\r') {
+            _pos += 1;
+            if (_pos < _text.length() && _text.charAt(_pos) == '\n') {
+                _pos += 1;
+            }
+        } else {
+            _pos += 1;
+        }
+        if (_line > 0) {
+            _line += 1;
+        }
+        _lineStart = _pos;
+    }
+
+    /** Move past whitespace, counting lines. */
+    private void skipWhitespace() {
+        while (_pos < _text.length()
+               && Character.isWhitespace(_text.charAt(_pos))) {
+            if (atLineEnd()) {
+                skipLineEnd();
+            } else {
+                _pos += 1;
+            }
+        }
+    }
+
+    /** Largest number of digits accepted by nextInt. */
+    private static final int MAX_DIGITS = 9;
+
+    /** Text being split. */
+    private final String _text;
+    /** Index in _text of the next character. */
+    private int _pos;
+    /** Number of the current line, or 0 if unknown. */
+    private int _line;
+    /** Index in _text of the start of the current line. */
+    private int _lineStart;
+    /** Line of the last token, or 0 if unknown. */
+    private int _markLine;
+    /** Column of the last token, counting from 1. */
+    private int _markColumn;
+}
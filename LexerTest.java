@@ -0,0 +1,84 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Lexer class.
+ *  @author James Nho Nguyen
+ */
+public class LexerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Assert that running BODY throws an EnigmaException whose message
+     *  is MSG. */
+    private void assertError(String msg, Runnable body) {
+        try {
+            body.run();
+            fail("no error: " + msg);
+        } catch (EnigmaException excp) {
+            assertEquals(msg, excp.getMessage());
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testConfigTokens() {
+        Lexer lexer = new Lexer(" ABCD \r\n 5 3\n I MQ (AB)(CD)\n\t(EF)\n"
+                                + " B R\n", 1);
+        assertEquals(" ABCD ", lexer.nextLine());
+        assertEquals(5, lexer.nextInt("slots"));
+        assertEquals(3, lexer.nextInt("pawls"));
+        assertEquals("I", lexer.next("name"));
+        assertEquals("MQ", lexer.next("type"));
+        assertTrue(lexer.nextIsCycle());
+        assertEquals("(AB)(CD)\n\t(EF)", lexer.cycles());
+        assertEquals("B", lexer.next("name"));
+        assertEquals("R", lexer.next("type"));
+        assertEquals("", lexer.cycles());
+        assertFalse(lexer.hasNext());
+    }
+
+    @Test
+    public void testWordsStopAtCycles() {
+        Lexer lexer = new Lexer("* B AXLE(HQ) (EX)", 0);
+        assertEquals("*", lexer.next("star"));
+        assertEquals("B", lexer.next("name"));
+        assertEquals("AXLE", lexer.next("setting"));
+        assertEquals("(HQ) (EX)", lexer.cycles());
+    }
+
+    @Test
+    public void testErrorPositions() {
+        assertError("line 3, column 4: expected pawls", () -> {
+            Lexer lexer = new Lexer("AB\n 5\n   x", 1);
+            lexer.nextLine();
+            lexer.nextInt("slots");
+            lexer.nextInt("pawls");
+        });
+        assertError("line 2, column 5: unterminated cycle", () -> {
+            Lexer lexer = new Lexer("I\n (A)(BC\n(D)", 1);
+            lexer.next("name");
+            lexer.cycles();
+        });
+        assertError("column 9: expected setting", () -> {
+            Lexer lexer = new Lexer("* B I II", 0);
+            for (int k = 0; k < 5; k += 1) {
+                lexer.next("setting");
+            }
+        });
+        assertError("column 3: Bad rotor name", () -> {
+            Lexer lexer = new Lexer("* Q", 0);
+            lexer.next("star");
+            lexer.next("name");
+            throw lexer.error("Bad rotor name");
+        });
+    }
+}
@@ -0,0 +1,255 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** A load generator for SessionServer.  It opens a number of
+ *  connections to a server on the loopback interface, holds them all
+ *  open at once, and then on each sends one settings line and a number
+ *  of message lines, one at a time, timing each from the sending of
+ *  the line to the arrival of the reply.  Connections run in
+ *  SessionServer.sessionThreads(), so in virtual threads where there
+ *  are any.
+ *  @author James Nho Nguyen
+ */
+class LoadGenerator {
+
+    /** Run a load against the server on loopback port ARGS[0] with
+     *  ARGS[1] connections each sending ARGS[2] copies of the message
+     *  ARGS[4] (by default HELLO WORLD) after the settings line ARGS[3],
+     *  and print a report on the standard output.  Exits with code 1 on
+     *  errors, including the failure of any connection. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 4 || args.length > 5) {
+                throw error("Usage: java enigma.LoadGenerator PORT "
+                            + "CONNECTIONS MESSAGES SETTINGS [MESSAGE]");
+            }
+            LoadGenerator load;
+            try {
+                load = new LoadGenerator(Integer.parseInt(args[0]),
+                                         Integer.parseInt(args[1]),
+                                         Integer.parseInt(args[2]), args[3],
+                                         args.length > 4 ? args[4]
+                                         : DEFAULT_MESSAGE);
+            } catch (NumberFormatException excp) {
+                throw error("bad number: %s", excp.getMessage());
+            }
+            load.run();
+            System.out.print(load.report());
+            if (load.failures() == 0) {
+                return;
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A load of CONNECTIONS connections to loopback port PORT, each
+     *  sending the settings line SETTINGS and then MESSAGES copies of the
+     *  message line MESSAGE, which must not be blank, since the server
+     *  answers a blank line with nothing to time. */
+    LoadGenerator(int port, int connections, int messages, String settings,
+                  String message) {
+        if (connections < 1 || messages < 0) {
+            throw error("need at least one connection");
+        }
+        if (message.isBlank()) {
+            throw error("message must not be blank");
+        }
+        _port = port;
+        _connections = connections;
+        _messages = messages;
+        _settings = (settings + "\n").getBytes(StandardCharsets.UTF_8);
+        _message = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        _latencies = new long[connections * messages];
+    }
+
+    /** Run the load, waiting for all connections to finish. */
+    void run() {
+        CountDownLatch open = new CountDownLatch(_connections);
+        CountDownLatch done = new CountDownLatch(_connections);
+        ExecutorService threads = SessionServer.sessionThreads();
+        for (int c = 0; c < _connections; c += 1) {
+            int first = c * _messages;
+            threads.execute(() -> {
+                try {
+                    client(open, first);
+                } catch (IOException | EnigmaException excp) {
+                    _failures.incrementAndGet();
+                    synchronized (_errors) {
+                        if (_errors.size() < MAX_ERRORS) {
+                            _errors.add(excp.getMessage());
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        try {
+            done.await();
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        } finally {
+            threads.shutdown();
+        }
+    }
+
+    /** Open one connection and, once all are open (counted by OPEN),
+     *  send my settings and messages on it, recording the latencies of
+     *  the replies from _latencies[FIRST]. */
+    private void client(CountDownLatch open, int first) throws IOException {
+        Socket socket;
+        try {
+            socket = new Socket(InetAddress.getLoopbackAddress(), _port);
+        } finally {
+            open.countDown();
+        }
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(READ_TIMEOUT);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            try {
+                open.await();
+            } catch (InterruptedException excp) {
+                throw error("interrupted");
+            }
+            _start.accumulateAndGet(System.nanoTime(), Math::min);
+            out.write(_settings);
+            for (int k = 0; k < _messages; k += 1) {
+                long start = System.nanoTime();
+                out.write(_message);
+                out.flush();
+                String reply = readLine(in);
+                if (reply.startsWith("Error: ")) {
+                    throw error("%s", reply.substring("Error: ".length()));
+                }
+                _latencies[first + k] = System.nanoTime() - start;
+                _completed.incrementAndGet();
+            }
+            _end.accumulateAndGet(System.nanoTime(), Math::max);
+        }
+    }
+
+    /** Return the next line from IN, without its terminator. */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int c = in.read(); c != '\n'; c = in.read()) {
+            if (c < 0) {
+                throw new IOException("connection closed");
+            }
+            line.append((char) c);
+        }
+        int end = line.length();
+        return end > 0 && line.charAt(end - 1) == '\r'
+            ? line.substring(0, end - 1) : line.toString();
+    }
+
+    /** Return the number of messages answered. */
+    long completed() {
+        return _completed.get();
+    }
+
+    /** Return the number of connections that failed. */
+    long failures() {
+        return _failures.get();
+    }
+
+    /** Return the latency of the replies at percentile P (0 to 100), in
+     *  nanoseconds. */
+    long percentile(double p) {
+        long[] sorted = sortedLatencies();
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int k = (int) Math.ceil(p / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, k))];
+    }
+
+    /** Return the latencies of the messages answered, in increasing
+     *  order. */
+    private long[] sortedLatencies() {
+        if (_sorted == null) {
+            _sorted = Arrays.stream(_latencies).filter((t) -> t > 0)
+                .sorted().toArray();
+        }
+        return _sorted;
+    }
+
+    /** Return a report of my last run. */
+    String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("connections: %d (%d failed)%n",
+                                    _connections, failures()));
+        for (String error : _errors) {
+            report.append(String.format("  %s%n", error));
+        }
+        double seconds = _end.get() < _start.get() ? 0
+            : (_end.get() - _start.get()) / 1e9;
+        report.append(String.format("messages: %d in %.3f s (%.0f/s)%n",
+                                    completed(), seconds,
+                                    completed() / Math.max(seconds, 1e-9)));
+        report.append("latency (us):");
+        for (double p : PERCENTILES) {
+            report.append(String.format(" p%s %.1f",
+                                        Double.toString(p).replace(".0", ""),
+                                        percentile(p) / 1e3));
+        }
+        report.append(String.format(" max %.1f%n",
+                                    percentile(100) / 1e3));
+        return report.toString();
+    }
+
+    /** Message sent when none is given. */
+    static final String DEFAULT_MESSAGE = "HELLO WORLD";
+    /** Percentiles reported, besides the maximum. */
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+    /** Milliseconds a connection waits for a reply before it fails. */
+    static final int READ_TIMEOUT = 30000;
+    /** Number of distinct failures reported. */
+    private static final int MAX_ERRORS = 5;
+
+    /** Port of the server. */
+    private final int _port;
+    /** Number of connections. */
+    private final int _connections;
+    /** Number of messages per connection. */
+    private final int _messages;
+    /** Settings line sent first on each connection. */
+    private final byte[] _settings;
+    /** Message line sent on each connection. */
+    private final byte[] _message;
+    /** Latency of each message, connection by connection, in
+     *  nanoseconds, or 0 if it was not answered. */
+    private final long[] _latencies;
+    /** _latencies of answered messages in increasing order, or null if
+     *  not yet computed. */
+    private long[] _sorted;
+    /** Number of messages answered. */
+    private final AtomicLong _completed = new AtomicLong();
+    /** Number of connections that failed. */
+    private final AtomicLong _failures = new AtomicLong();
+    /** Messages of the first failures. */
+    private final List<String> _errors = new ArrayList<>();
+    /** Time at which the first settings line was sent. */
+    private final AtomicLong _start = new AtomicLong(Long.MAX_VALUE);
+    /** Time at which the last connection finished its messages, before
+     *  _start if none did. */
+    private final AtomicLong _end = new AtomicLong(Long.MIN_VALUE);
+}
@@ -1,11 +1,19 @@
 package enigma;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import static enigma.EnigmaException.*;
 
-/** Class that represents a complete enigma machine.
+/** Class that represents a complete enigma machine.  The rotors placed
+ *  in it and its plugboard form an immutable MachineSpec, which may be
+ *  shared with other threads through spec(); the rotor positions are kept
+ *  in a MachineState of the machine's own.  The Rotor objects themselves
+ *  are never changed, so the same rotor may be placed in several machines,
+ *  or in several slots of one.
  *  @author James Nho Nguyen
  */
 class Machine {
@@ -18,10 +26,10 @@ class Machine {
         _alphabet = alpha;
         _numRotors = numRotors;
         _pawls = pawls;
-        _orderedAllRotors = new ArrayList<Rotor>();
         for (Rotor eachRotor: allRotors) {
             _allRotorsHashMap.put(eachRotor.name(), eachRotor);
         }
+        setSpec(new MachineSpec(alpha, new Rotor[0], null));
     }
 
     /** Return the number of rotor slots I have. */
@@ -35,10 +43,40 @@ class Machine {
     }
 
     /** Return Rotor #K, where Rotor #0 is the reflector, and Rotor
-     *  #(numRotors()-1) is the fast Rotor.  Modifying this Rotor has
+     *  #(numRotors()-1) is the fast Rotor.  Its setting is not that of
+     *  my slot K, which is given by setting(K).  Modifying this Rotor has
      *  undefined results. */
     Rotor getRotor(int k) {
-        return _orderedAllRotors.get(k);
+        return _spec.slot(k);
+    }
+
+    /** Return the current setting of Rotor #K. */
+    int setting(int k) {
+        return _state.positions()[k];
+    }
+
+    /** Return the specification of my rotors and plugboard, which may be
+     *  shared with other threads. */
+    MachineSpec spec() {
+        return _spec;
+    }
+
+    /** Return my state: the positions of my rotors, over spec(). */
+    MachineState state() {
+        return _state;
+    }
+
+    /** Continue from STATE, which must be over a spec with my alphabet and
+     *  number of rotors, adopting its rotors and plugboard.  STATE is used
+     *  directly rather than copied. */
+    void setState(MachineState state) {
+        MachineSpec spec = state.spec();
+        if (spec.alphabet() != _alphabet || spec.numSlots() != _numRotors) {
+            throw error("state does not fit this machine");
+        }
+        _spec = spec;
+        _state = state;
+        _slots = slots(spec);
     }
 
     Alphabet alphabet() {
@@ -52,24 +90,45 @@ class Machine {
         if (rotors.length != _numRotors) {
             throw new EnigmaException("Rotor names do not match");
         }
-        for (String eachRotor: rotors) {
-            if (_allRotorsHashMap.containsKey(eachRotor)) {
-                Rotor qualifiedRotor = _allRotorsHashMap.get(eachRotor);
-                qualifiedRotor.set(0);
-                _orderedAllRotors.add(qualifiedRotor);
+        Rotor[] slots = new Rotor[rotors.length];
+        for (int r = 0; r < rotors.length; r += 1) {
+            slots[r] = _allRotorsHashMap.get(rotors[r]);
+            if (slots[r] == null) {
+                throw new EnigmaException("Bad rotor name");
             }
         }
+        setSpec(new MachineSpec(_alphabet, slots, _spec.plugboard()));
+    }
+
+    /** Make SPEC my spec, with all rotors at their 0 setting. */
+    private void setSpec(MachineSpec spec) {
+        _spec = spec;
+        _state = spec.newState();
+        _slots = slots(spec);
+    }
+
+    /** Return the rotors of SPEC, slot by slot. */
+    private static Rotor[] slots(MachineSpec spec) {
+        Rotor[] slots = new Rotor[spec.numSlots()];
+        for (int r = 0; r < slots.length; r += 1) {
+            slots[r] = spec.slot(r);
+        }
+        return slots;
     }
 
     /** Set my rotors according to SETTING, which must be a string of
-     *  numRotors()-1 characters in my alphabet. The first letter refers
-     *  to the leftmost rotor setting (not counting the reflector).  */
+     *  numRotors()-1 characters (code points) in my alphabet. The first
+     *  letter refers to the leftmost rotor setting (not counting the
+     *  reflector).  */
     void setRotors(String setting) {
-        if (setting.length() == (numRotors() - 1)) {
-            for (int each = 0; each < setting.length(); each++) {
-                char letter = setting.charAt(each);
-                Rotor rotor = _orderedAllRotors.get(each + 1);
-                rotor.set(letter);
+        int[] letters = setting.codePoints().toArray();
+        if (letters.length == (numRotors() - 1)) {
+            for (int each = 0; each < letters.length; each++) {
+                int posn = _alphabet.toInt(letters[each]);
+                if (posn < 0) {
+                    throw error("setting %c not in alphabet", letters[each]);
+                }
+                _state.positions()[each + 1] = posn;
             }
         } else {
             throw new EnigmaException("Length of setting != Rotors");
@@ -78,88 +137,247 @@ class Machine {
 
     /** Return the current plugboard's permutation. */
     Permutation plugboard() {
-        return _plugboard; }
+        return _spec.plugboard(); }
 
-    /** Set the plugboard to PLUGBOARD. */
+    /** Set the plugboard to PLUGBOARD, keeping the rotor settings. */
     void setPlugboard(Permutation plugboard) {
-        _plugboard = plugboard; }
+        _spec = _spec.withPlugboard(plugboard);
+        _state = _spec.newState(_state.positions()); }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        advanceRotors();
-        if (Main.verbose()) {
-            System.err.printf("[");
-            for (int r = 1; r < numRotors(); r += 1) {
-                System.err.printf("%c",
-                        alphabet().toChar(getRotor(r).setting())); }
-            System.err.printf("] %c -> ", alphabet().toChar(c));
+        if (_tracer == Tracer.NONE) {
+            return _state.convert(c);
         }
+        _state.step();
+        int[] positions = _state.positions();
+        c = plugboard().wrap(c);
+        _tracer.start(positions, c);
         c = plugboard().permute(c);
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(c));
+        _tracer.hop(c);
+        for (int r = _slots.length - 1; r > 0; r -= 1) {
+            c = _slots[r].convertForward(c, positions[r]);
+            _tracer.hop(c);
         }
-        c = applyRotors(c);
-        c = plugboard().permute(c);
-        if (Main.verbose()) {
-            System.err.printf("%c%n", alphabet().toChar(c));
+        for (int r = 0; r < _slots.length; r += 1) {
+            c = _slots[r].convertBackward(c, positions[r]);
+            _tracer.hop(c);
         }
+        c = plugboard().permute(c);
+        _tracer.end(c);
         return c; }
 
-    /** Advance all rotors to their next position. */
-    private void advanceRotors() {
-        ArrayList<Integer> qualifyingIndexes = new ArrayList<Integer>();
-        ArrayList<Integer> removedDuplicates = new ArrayList<Integer>();
-        for (int eR = _orderedAllRotors.size() - 1; eR > 0; eR--) {
-            Rotor rotor = _orderedAllRotors.get(eR);
-            if (rotor.atNotch() && _orderedAllRotors.get(eR - 1).rotates()) {
-                qualifyingIndexes.add(eR);
-                qualifyingIndexes.add(eR - 1);
+    /** Return the tracer that receives the path of each character I
+     *  convert. */
+    Tracer tracer() {
+        return _tracer;
+    }
+
+    /** Send the path of each character I convert to TRACER.  Tracer.NONE
+     *  turns tracing off. */
+    void setTracer(Tracer tracer) {
+        _tracer = tracer;
+    }
+
+    /** Set my rotors to the positions they would have after converting N
+     *  more characters, without converting them.  Takes time independent
+     *  of N for all but unusual notch placements; see Odometer.seek. */
+    void seek(long n) {
+        _state.seek(n);
+    }
+
+    /** Lay out the conversion tables of all my available rotors so that
+     *  together they take at most BYTES bytes, each rotor getting an equal
+     *  share.  See Rotor.layout(long).  Rotors are shared with machines
+     *  made from the same rotors, so this should be done before any of
+     *  them are used in other threads. */
+    void setTableBudget(long bytes) {
+        long share = bytes / Math.max(1, _allRotorsHashMap.size());
+        for (Rotor rotor : _allRotorsHashMap.values()) {
+            rotor.layout(share);
+        }
+    }
+
+    /** Return the approximate number of bytes of memory used by my
+     *  alphabet, my available rotors' permutations and tables, and the
+     *  tables of my current state, none of which depend on the length of
+     *  the messages converted. */
+    long footprint() {
+        long n = _alphabet.size();
+        long result = _alphabet.footprint() + 8 * n;
+        for (Rotor rotor : _allRotorsHashMap.values()) {
+            result += rotor.permutation().footprint() + rotor.tableBytes();
+        }
+        return result;
+    }
+
+    /** Return the number of characters converted using an already built
+     *  table for the rotors other than the fast one. */
+    long compositeHits() {
+        return _state.compositeHits();
+    }
+
+    /** Return the number of times the table for the rotors other than the
+     *  fast one has been built. */
+    long compositeRebuilds() {
+        return _state.compositeRebuilds();
+    }
+
+    /** Returns the encoding/decoding of MSG, updating the state of
+     *  the rotors accordingly. */
+    String convert(String msg) {
+        if (!_alphabet.isBmp()) {
+            StringBuilder result = new StringBuilder(msg.length());
+            msg.codePoints().forEach((c) -> result.appendCodePoint(
+                _alphabet.toCodePoint(convert(_alphabet.toInt(c)))));
+            return result.toString();
+        }
+        char[] chars = msg.toCharArray();
+        convert(chars, 0, chars.length);
+        return new String(chars);
+    }
+
+    /** Convert CHARS[FROM .. TO-1] in place, updating the state of the
+     *  rotors accordingly.  All my characters must be single chars. */
+    void convert(char[] chars, int from, int to) {
+        if (!_alphabet.isBmp()) {
+            throw error("alphabet has characters outside the Basic "
+                        + "Multilingual Plane; convert strings instead");
+        }
+        if (_tracer != Tracer.NONE) {
+            for (int k = from; k < to; k += 1) {
+                chars[k] = _alphabet.toChar(convert(_alphabet.toInt(chars[k])));
             }
+        } else {
+            _state.convert(chars, from, to, _alphabet);
+        }
+    }
+
+    /** Convert BYTES[FROM .. TO-1] in place.  My alphabet must be
+     *  Alphabet.bytes() or one like it, so that each byte's unsigned value
+     *  is its index. */
+    void convert(byte[] bytes, int from, int to) {
+        if (!_alphabet.isBytes()) {
+            throw error("byte conversion needs a %d-symbol alphabet",
+                        Alphabet.BYTES);
         }
-        qualifyingIndexes.add(_orderedAllRotors.size() - 1);
-        for (int eachI = 0; eachI < qualifyingIndexes.size(); eachI++) {
-            if (!removedDuplicates.contains(qualifyingIndexes.get(eachI))) {
-                removedDuplicates.add(qualifyingIndexes.get(eachI));
+        if (_tracer != Tracer.NONE) {
+            for (int k = from; k < to; k += 1) {
+                bytes[k] = (byte) convert(bytes[k] & 0xff);
             }
+        } else {
+            _state.convert(bytes, from, to);
         }
-        for (int eachAdvancingRotor: removedDuplicates) {
-            Rotor rotor = _orderedAllRotors.get(eachAdvancingRotor);
-            rotor.advance();
+    }
+
+    /** Convert the bytes of BUFFER from its position to its limit in
+     *  place, as for convert(byte[], int, int), and advance its position
+     *  to its limit.  BUFFER may be direct or mapped. */
+    void convert(ByteBuffer buffer) {
+        int from = buffer.position(), to = buffer.limit();
+        if (buffer.hasArray()) {
+            int offset = buffer.arrayOffset();
+            convert(buffer.array(), offset + from, offset + to);
+        } else {
+            byte[] block = new byte[Math.min(to - from, BYTE_BLOCK)];
+            for (int k = from; k < to; k += block.length) {
+                int n = Math.min(block.length, to - k);
+                buffer.get(block, 0, n);
+                convert(block, 0, n);
+                buffer.position(k);
+                buffer.put(block, 0, n);
+            }
         }
+        buffer.position(to);
+    }
+
+    /** Returns the encoding/decoding of MSG, as for convert(MSG), dividing
+     *  the work among the threads of the common ForkJoinPool. */
+    String convertParallel(String msg) {
+        return convertParallel(msg, ForkJoinPool.commonPool());
     }
 
-    /** Return the result of applying the rotors to the character C (as an
-     *  index in the range 0..alphabet size - 1). */
-    private int applyRotors(int c) {
-        Rotor rotor;
-        int convert = c;
-        for (int eachR = _orderedAllRotors.size() - 1; eachR > 0; eachR--) {
-            rotor = _orderedAllRotors.get(eachR);
-            convert = rotor.convertForward(convert);
+    /** Returns the encoding/decoding of MSG, as for convert(MSG), dividing
+     *  the work among the threads of POOL.  MSG is cut into chunks, the
+     *  rotor positions at the start of each are found by seeking from the
+     *  current positions, and the chunks are converted independently.  My
+     *  rotors end where convert(MSG) would leave them.  Traced machines
+     *  convert sequentially so that the trace stays in order, as do
+     *  machines whose alphabets have supplementary characters. */
+    String convertParallel(String msg, ForkJoinPool pool) {
+        int length = msg.length();
+        int chunk = Math.max(MIN_PARALLEL_CHUNK,
+                (length + 4 * pool.getParallelism() - 1)
+                / (4 * pool.getParallelism()));
+        if (_tracer != Tracer.NONE || length <= chunk
+            || !_alphabet.isBmp()) {
+            return convert(msg);
         }
-        for (int eachRo = 0; eachRo < _orderedAllRotors.size(); eachRo++) {
-            rotor = _orderedAllRotors.get(eachRo);
-            convert = rotor.convertBackward(convert);
+        char[] chars = msg.toCharArray();
+        MachineState[] starts = new MachineState[(length + chunk - 1) / chunk];
+        for (int k = 0; k < starts.length; k += 1) {
+            starts[k] = _state.copy();
+            _state.seek(Math.min(chunk, length - k * chunk));
         }
-        return convert;
+        pool.invoke(new ConvertChunks(starts, chars, chunk, 0, starts.length,
+                                      _alphabet));
+        return new String(chars);
     }
 
-    /** Returns the encoding/decoding of MSG, updating the state of
-     *  the rotors accordingly. */
-    String convert(String msg) {
-        String convertedMessage = "";
-        for (int eachL = 0; eachL < msg.length(); eachL++) {
-            int num = alphabet().toInt(msg.charAt(eachL));
-            char con = alphabet().toChar(convert(num));
-            convertedMessage += con;
+    /** A task that converts chunks of a message in place. */
+    private static class ConvertChunks extends RecursiveAction {
+
+        /** A task converting chunks LO .. HI-1 of CHARS, each CHUNK long
+         *  (except perhaps the last), in ALPHABET.  STARTS[K] is a state
+         *  positioned at the start of chunk K. */
+        ConvertChunks(MachineState[] starts, char[] chars, int chunk,
+                      int lo, int hi, Alphabet alphabet) {
+            _starts = starts;
+            _chars = chars;
+            _chunk = chunk;
+            _lo = lo;
+            _hi = hi;
+            _alphabet = alphabet;
         }
-        return convertedMessage;
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo == 1) {
+                int from = _lo * _chunk;
+                int to = Math.min(_chars.length, from + _chunk);
+                _starts[_lo].convert(_chars, from, to, _alphabet);
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new ConvertChunks(_starts, _chars, _chunk,
+                                            _lo, mid, _alphabet),
+                          new ConvertChunks(_starts, _chars, _chunk,
+                                            mid, _hi, _alphabet));
+            }
+        }
+
+        /** Version of the serialized form inherited from ForkJoinTask,
+         *  which is never used. */
+        private static final long serialVersionUID = 1L;
+
+        /** States positioned at the start of each chunk. */
+        private final MachineState[] _starts;
+        /** The message being converted. */
+        private final char[] _chars;
+        /** Length of each chunk. */
+        private final int _chunk;
+        /** First chunk I convert. */
+        private final int _lo;
+        /** Limit of the chunks I convert. */
+        private final int _hi;
+        /** Alphabet of the message. */
+        private final Alphabet _alphabet;
     }
 
+    /** Remove my rotors from their slots, keeping the plugboard. */
     void resetRotors() {
-        _orderedAllRotors.removeAll(_orderedAllRotors);
+        setSpec(new MachineSpec(_alphabet, new Rotor[0], _spec.plugboard()));
     }
 
     /**  Get rotors.
@@ -175,11 +393,23 @@ class Machine {
     private int _numRotors;
     /** Number of pawls. */
     private int _pawls;
-    /** Hashmap of all rotors. */
+    /** Hashmap of all rotors, in the order they were given. */
     private HashMap<String, Rotor> _allRotorsHashMap
-            = new HashMap<String, Rotor>();
-    /** Array list of all Rotors. */
-    private ArrayList<Rotor> _orderedAllRotors;
-    /** Plugboard. */
-    private Permutation _plugboard;
+            = new LinkedHashMap<String, Rotor>();
+    /** My rotors and plugboard. */
+    private MachineSpec _spec;
+    /** The rotors of _spec, slot by slot. */
+    private Rotor[] _slots;
+    /** Positions of _slots and the tables that depend on them. */
+    private MachineState _state;
+    /** Receives the path of each character I convert. */
+    private Tracer _tracer = Tracer.NONE;
+
+    /** Messages are divided into at least this many characters per task
+     *  by convertParallel. */
+    static final int MIN_PARALLEL_CHUNK = 1 << 16;
+
+    /** Buffers without a backing array are converted through a copy of at
+     *  most this many bytes at a time. */
+    private static final int BYTE_BLOCK = 1 << 16;
 }
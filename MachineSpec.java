@@ -0,0 +1,127 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The fixed parts of an enigma machine: its alphabet, the rotor in each
+ *  slot, how those rotors step, and the plugboard.  A spec never changes
+ *  once built and reads only the parts of its rotors that do not change,
+ *  so any number of threads may share one, each converting with states of
+ *  its own from newState().
+ *  @author James Nho Nguyen
+ */
+final class MachineSpec {
+
+    /** A spec for a machine over ALPHABET with rotor SLOTS[R] in slot R
+     *  (slot 0 holding the reflector) and plugboard PLUGBOARD, which may be
+     *  null if it is to be supplied later by withPlugboard. */
+    MachineSpec(Alphabet alphabet, Rotor[] slots, Permutation plugboard) {
+        for (Rotor rotor : slots) {
+            if (rotor.size() != alphabet.size()) {
+                throw error("rotor %s does not match the alphabet",
+                            rotor.name());
+            }
+        }
+        _alphabet = alphabet;
+        _slots = slots.clone();
+        _odometer = new Odometer(_slots, alphabet.size());
+        _plugboard = plugboard;
+    }
+
+    /** A spec with the rotors and alphabet of FROM and plugboard
+     *  PLUGBOARD. */
+    private MachineSpec(MachineSpec from, Permutation plugboard) {
+        _alphabet = from._alphabet;
+        _slots = from._slots;
+        _odometer = from._odometer;
+        _plugboard = plugboard;
+    }
+
+    /** Return a spec like me but with plugboard PLUGBOARD.  The rotors and
+     *  their stepping tables are shared, not copied. */
+    MachineSpec withPlugboard(Permutation plugboard) {
+        return new MachineSpec(this, plugboard);
+    }
+
+    /** Return a new state for me with every rotor at position 0. */
+    MachineState newState() {
+        return new MachineState(this, new int[_slots.length]);
+    }
+
+    /** Return a new state for me with the rotor in slot R at
+     *  POSITIONS[R]. */
+    MachineState newState(int[] positions) {
+        if (positions.length != _slots.length) {
+            throw error("wrong number of rotor positions");
+        }
+        return new MachineState(this, positions.clone());
+    }
+
+    /** Return a new state for me with the rotors set according to
+     *  SETTING, which gives the position of each rotor but the reflector
+     *  as a character of my alphabet, leftmost first. */
+    MachineState newState(String setting) {
+        int[] letters = setting.codePoints().toArray();
+        if (letters.length != _slots.length - 1) {
+            throw error("Length of setting != Rotors");
+        }
+        int[] positions = new int[_slots.length];
+        for (int r = 1; r < _slots.length; r += 1) {
+            int c = letters[r - 1];
+            positions[r] = _alphabet.toInt(c);
+            if (positions[r] < 0) {
+                throw error("setting %c not in alphabet", c);
+            }
+        }
+        return new MachineState(this, positions);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return my number of rotor slots. */
+    int numSlots() {
+        return _slots.length;
+    }
+
+    /** Return the rotor in slot R, slot 0 holding the reflector.  Only its
+     *  conversions at explicit positions are used. */
+    Rotor slot(int r) {
+        return _slots[r];
+    }
+
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Return the substitution made on a character by a machine in a
+     *  state whose rotor positions are POSITIONS, once it has stepped:
+     *  the conjugates of the rotors' permutations by their positions,
+     *  composed from the plugboard through the reflector and back. */
+    Permutation substitution(int[] positions) {
+        Permutation path =
+            _slots[0].permutation().conjugate(positions[0]).inverse();
+        for (int r = 1; r < _slots.length; r += 1) {
+            Permutation rotor =
+                _slots[r].permutation().conjugate(positions[r]);
+            path = rotor.inverse().compose(path.compose(rotor));
+        }
+        return _plugboard.compose(path.compose(_plugboard));
+    }
+
+    /** Return the stepping mechanism of my rotors. */
+    Odometer odometer() {
+        return _odometer;
+    }
+
+    /** Alphabet of my rotors and plugboard. */
+    private final Alphabet _alphabet;
+    /** The rotor in each slot.  Never exposed, so never changed. */
+    private final Rotor[] _slots;
+    /** Stepping mechanism of _slots. */
+    private final Odometer _odometer;
+    /** Plugboard. */
+    private final Permutation _plugboard;
+}
@@ -0,0 +1,119 @@
+package enigma;
+
+import java.util.ArrayList;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MachineSpec class.
+ *  @author James Nho Nguyen
+ */
+public class MachineSpecTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return naval rotor NAME, with notches NOTCHES. */
+    private static Rotor moving(String name, String notches) {
+        return new MovingRotor(name, new Permutation(NAVALA.get(name), UPPER),
+                               notches);
+    }
+
+    /** Return a spec for B Beta III IV I with plugboard (HQ) (EX) (IP). */
+    private static MachineSpec naval() {
+        Machine machine = navalMachine();
+        machine.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP)", UPPER));
+        return machine.spec();
+    }
+
+    /** Return the conversion of MSG by STATE. */
+    private static String convert(MachineState state, String msg) {
+        char[] chars = msg.toCharArray();
+        state.convert(chars, 0, chars.length, UPPER);
+        return new String(chars);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testStatesAreIndependent() {
+        MachineSpec spec = naval();
+        MachineState first = spec.newState("AXLE");
+        MachineState second = spec.newState("AXLE");
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        String expected = convert(first, msg);
+        assertNotEquals(expected, convert(first, msg));
+        assertEquals(expected, convert(second, msg));
+        assertArrayEquals(new int[] { 0, 0, 23, 11, 4 },
+                          spec.newState("AXLE").positions());
+    }
+
+    @Test
+    public void testSharedAcrossThreads() throws InterruptedException {
+        MachineSpec spec = naval();
+        StringBuilder msg = new StringBuilder();
+        for (int k = 0; k < 20000; k += 1) {
+            msg.append(UPPER_STRING.charAt(k * 7 % 26));
+        }
+        String expected = convert(spec.newState("QEPA"), msg.toString());
+        String[] results = new String[4];
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < results.length; t += 1) {
+            int k = t;
+            threads.add(new Thread(() -> {
+                results[k] = convert(spec.newState("QEPA"), msg.toString());
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (String result : results) {
+            assertEquals(expected, result);
+        }
+    }
+
+    @Test
+    public void testSameRotorInTwoSlots() {
+        Rotor reflector =
+            new Reflector("B", new Permutation(NAVALA.get("B"), UPPER));
+        Rotor shared = moving("I", "Q");
+        Permutation plugboard = new Permutation("", UPPER);
+        MachineSpec aliased = new MachineSpec(UPPER,
+                new Rotor[] { reflector, shared, shared }, plugboard);
+        MachineSpec distinct = new MachineSpec(UPPER,
+                new Rotor[] { reflector, shared, moving("I", "Q") },
+                plugboard);
+        String msg = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG";
+        assertEquals(convert(distinct.newState("PQ"), msg),
+                     convert(aliased.newState("PQ"), msg));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadSetting() {
+        naval().newState("AXL");
+    }
+
+    @Test
+    public void testSubstitution() {
+        MachineSpec spec = naval();
+        MachineState state = spec.newState("AXLE");
+        for (int k = 0; k < 700; k += 1) {
+            MachineState next = state.copy();
+            next.step();
+            Permutation sub = spec.substitution(next.positions());
+            int c = (k * 11) % 26;
+            assertEquals(sub.permute(c), state.convert(c));
+            assertTrue(sub.derangement());
+        }
+    }
+}
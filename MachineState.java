@@ -0,0 +1,156 @@
+package enigma;
+
+/** The moving parts of an enigma machine: the position of the rotor in
+ *  each slot, plus a table of the substitution performed by the slow
+ *  rotors at those positions.  Everything else belongs to the shared,
+ *  unchanging MachineSpec, so a state costs O(rotors) to create and many
+ *  states over one spec may be used from different threads.
+ *  @author James Nho Nguyen
+ */
+class MachineState {
+
+    /** A state for SPEC with the rotor in slot R at POSITIONS[R].  Keeps
+     *  POSITIONS rather than copying it. */
+    MachineState(MachineSpec spec, int[] positions) {
+        _spec = spec;
+        _slots = new Rotor[spec.numSlots()];
+        for (int r = 0; r < _slots.length; r += 1) {
+            _slots[r] = spec.slot(r);
+        }
+        _odometer = spec.odometer();
+        _plugboard = spec.plugboard();
+        _positions = positions;
+    }
+
+    /** Return a copy of me that may be advanced independently. */
+    MachineState copy() {
+        return new MachineState(_spec, _positions.clone());
+    }
+
+    /** Return the spec I am a state of. */
+    MachineSpec spec() {
+        return _spec;
+    }
+
+    /** Return the positions of my rotors, slot by slot.  Changes to the
+     *  returned array change my positions. */
+    int[] positions() {
+        return _positions;
+    }
+
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Advance my rotors by one character. */
+    void step() {
+        _odometer.step(_positions);
+    }
+
+    /** Advance my rotors by N characters without converting them. */
+    void seek(long n) {
+        _odometer.seek(_positions, n);
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1), after first advancing
+     *  the rotors. */
+    int convert(int c) {
+        _odometer.step(_positions);
+        int last = _slots.length - 1;
+        Rotor fast = _slots[last];
+        int posn = _positions[last];
+        c = _plugboard.permute(c);
+        c = fast.convertForward(c, posn);
+        c = fast.convertBackward(composite()[c], posn);
+        return _plugboard.permute(c);
+    }
+
+    /** Convert CHARS[FROM .. TO-1], which are characters of ALPHABET, in
+     *  place. */
+    void convert(char[] chars, int from, int to, Alphabet alphabet) {
+        for (int k = from; k < to; k += 1) {
+            chars[k] = alphabet.toChar(convert(alphabet.toInt(chars[k])));
+        }
+    }
+
+    /** Convert BYTES[FROM .. TO-1] in place, taking each byte's unsigned
+     *  value as its index.  My alphabet must have Alphabet.BYTES
+     *  characters. */
+    void convert(byte[] bytes, int from, int to) {
+        for (int k = from; k < to; k += 1) {
+            bytes[k] = (byte) convert(bytes[k] & BYTE_MASK);
+        }
+    }
+
+    /** Return the permutation performed by all rotors other than the fast
+     *  one, from its left side through the reflector and back, at their
+     *  current positions.  This changes only when a slower rotor moves, so
+     *  it is rebuilt only when their positions differ from those it was
+     *  last built for, with one pass over the table per rotor. */
+    private int[] composite() {
+        int last = _slots.length - 1;
+        if (_compositeKey != null) {
+            boolean same = true;
+            for (int r = 0; r < last; r += 1) {
+                same &= _compositeKey[r] == _positions[r];
+            }
+            if (same) {
+                _compositeHits += 1;
+                return _composite;
+            }
+        } else {
+            _compositeKey = new int[last];
+            _composite = new int[_spec.alphabet().size()];
+        }
+        _compositeRebuilds += 1;
+        System.arraycopy(_positions, 0, _compositeKey, 0, last);
+        for (int c = 0; c < _composite.length; c += 1) {
+            _composite[c] = c;
+        }
+        for (int r = last - 1; r > 0; r -= 1) {
+            _slots[r].convertForward(_composite, _positions[r]);
+        }
+        for (int r = 0; r < last; r += 1) {
+            _slots[r].convertBackward(_composite, _positions[r]);
+        }
+        return _composite;
+    }
+
+    /** Return the number of characters converted using an already built
+     *  table for the rotors other than the fast one. */
+    long compositeHits() {
+        return _compositeHits;
+    }
+
+    /** Return the number of times the table for the rotors other than the
+     *  fast one has been built. */
+    long compositeRebuilds() {
+        return _compositeRebuilds;
+    }
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** The spec whose machine I am a state of. */
+    private final MachineSpec _spec;
+    /** The rotor in each slot of _spec, slot 0 holding the reflector. */
+    private final Rotor[] _slots;
+    /** Stepping mechanism of _slots. */
+    private final Odometer _odometer;
+    /** Current position of the rotor in each slot. */
+    private final int[] _positions;
+    /** Plugboard of _spec. */
+    private final Permutation _plugboard;
+    /** Permutation performed by all rotors but the fast one, see
+     *  composite(). */
+    private int[] _composite;
+    /** Positions of rotors #0 to #(numRotors()-2) for which _composite was
+     *  built, or null if it has not been built. */
+    private int[] _compositeKey;
+    /** Number of conversions that reused _composite. */
+    private long _compositeHits;
+    /** Number of times _composite was built. */
+    private long _compositeRebuilds;
+}
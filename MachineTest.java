@@ -1,6 +1,9 @@
 package enigma;
 
+import java.io.StringWriter;
 import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.Timeout;
@@ -76,4 +79,107 @@ public class MachineTest {
         assertEquals("QVPQSOKOILPUBKJZPISFXDW",
                 mach.convert("FROMHISSHOULDERHIAWATHA"));
     }
+
+    @Test
+    public void testCompositeCache() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        String expected = "QVPQSOKOILPUBKJZPISFXDW";
+        assertEquals(expected, mach.convert(msg));
+        assertEquals(msg.length(),
+                mach.compositeHits() + mach.compositeRebuilds());
+        assertEquals(2, mach.compositeRebuilds());
+        mach.setRotors(SETTING1);
+        assertEquals(expected, mach.convert(msg));
+        assertEquals(4, mach.compositeRebuilds());
+    }
+
+    @Test
+    public void testSeek() {
+        Machine stepped = mach1();
+        Machine seeked = mach1();
+        stepped.setPlugboard(new Permutation("", AZ));
+        seeked.setPlugboard(new Permutation("", AZ));
+        for (int n : new int[] { 0, 1, 30, 700, 20000 }) {
+            for (int k = 0; k < n; k += 1) {
+                stepped.convert(0);
+            }
+            seeked.seek(n);
+            for (int r = 0; r < 5; r += 1) {
+                assertEquals(stepped.setting(r), seeked.setting(r));
+            }
+            assertEquals(stepped.convert(7), seeked.convert(7));
+        }
+    }
+
+    @Test
+    public void testConvertParallel() {
+        Random random = new Random(61);
+        char[] chars = new char[5 * Machine.MIN_PARALLEL_CHUNK + 17];
+        for (int k = 0; k < chars.length; k += 1) {
+            chars[k] = TestUtils.UPPER_STRING.charAt(random.nextInt(26));
+        }
+        String msg = new String(chars);
+        Machine sequential = mach1();
+        Machine parallel = mach1();
+        Permutation plugboard = new Permutation("(HQ) (EX) (IP)", AZ);
+        sequential.setPlugboard(plugboard);
+        parallel.setPlugboard(plugboard);
+        StringBuilder expected = new StringBuilder();
+        for (int k = 0; k < chars.length; k += 1) {
+            expected.append(AZ.toChar(sequential.convert(AZ.toInt(chars[k]))));
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        assertEquals(expected.toString(), parallel.convertParallel(msg, pool));
+        pool.shutdown();
+        for (int r = 0; r < 5; r += 1) {
+            assertEquals(sequential.setting(r), parallel.setting(r));
+        }
+    }
+
+    @Test
+    public void testTracers() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(YF) (HZ)", AZ));
+        StringWriter text = new StringWriter();
+        mach.setTracer(new TextTracer(AZ, text, false));
+        assertEquals(25, mach.convert(24));
+        mach.tracer().flush();
+        assertEquals("[AXLF] Y -> F -> I -> V -> J -> W -> H -> X -> Z -> J "
+                     + "-> H -> Z" + System.lineSeparator(),
+                     text.toString());
+
+        mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        StringWriter json = new StringWriter();
+        mach.setTracer(new JsonTracer(AZ, json));
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                mach.convert("FROMHISSHOULDERHIAWATHA"));
+        mach.tracer().flush();
+        String[] lines = json.toString().split("\n");
+        assertEquals(23, lines.length);
+        assertTrue(lines[22].startsWith("{\"n\":22,\"pos\":\"AXMB\","
+                                        + "\"in\":\"A\",\"path\":\""));
+        assertTrue(lines[22].endsWith("\"out\":\"W\"}"));
+    }
+
+    @Test
+    public void testSupplementaryAlphabet() {
+        Alphabet ext = Alphabet.range(0x20000, 0x20000 + 4999);
+        Machine mach = new RotorGenerator(ext, 11).machine();
+        mach.insertRotors(new String[] { "R1", "F1", "M1", "M2", "M3" });
+        mach.setPlugboard(new Permutation("", ext));
+        String start = new String(Character.toChars(0x20000 + 4998));
+        mach.setRotors(start.repeat(4));
+        StringBuilder msg = new StringBuilder();
+        for (int k = 0; k < 6000; k += 1) {
+            msg.appendCodePoint(0x20000 + (k * 37) % 5000);
+        }
+        String enc = mach.convert(msg.toString());
+        assertEquals(6000, enc.codePointCount(0, enc.length()));
+        assertNotEquals(msg.toString(), enc);
+        mach.setRotors(start.repeat(4));
+        assertEquals(msg.toString(), mach.convert(enc));
+    }
 }
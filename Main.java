@@ -1,12 +1,22 @@
 package enigma;
 
-import java.io.File;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
 import java.util.HashMap;
 
 import ucb.util.CommandArgs;
@@ -30,14 +40,84 @@ public final class Main {
     public static void main(String... args) {
         try {
             CommandArgs options =
-                new CommandArgs("--verbose --=(.*){1,3}", args);
+                new CommandArgs("--verbose --trace=(.+) "
+                                + "--flush=(line|message|buffer) "
+                                + "--mmap --group=(\\d+) --wrap=(\\d+) "
+                                + "--parallel=(\\d+) --compile=(.+) "
+                                + "--cache=(\\d+) --bytes=(.+) "
+                                + "--generate=(\\d+) "
+                                + "--table-budget=(\\d+[kKmMgG]?) "
+                                + "--specialize --daemon --serve=(\\d+) "
+                                + "--=(.*){1,3}", args);
             if (!options.ok()) {
                 throw error("Usage: java enigma.Main [--verbose] "
-                            + "[INPUT [OUTPUT]]");
+                            + "[--trace=FILE] "
+                            + "[--flush=line|message|buffer] [--mmap] "
+                            + "[--group=N] [--wrap=N] [--parallel=N] "
+                            + "[--cache=N] [--table-budget=BYTES] "
+                            + "[--specialize] "
+                            + "CONFIG [INPUT [OUTPUT]]\n"
+                            + "       java enigma.Main [--mmap] "
+                            + "--bytes=SETTINGS CONFIG [INPUT [OUTPUT]]\n"
+                            + "       java enigma.Main --compile=IMAGE "
+                            + "CONFIG\n"
+                            + "       java enigma.Main --generate=SEED "
+                            + "IMAGE\n"
+                            + "       java enigma.Main [--parallel=N] "
+                            + "[--cache=N] [--specialize] --daemon SOCKET\n"
+                            + "       java enigma.Main [--cache=N] "
+                            + "[--specialize] --serve=PORT CONFIG");
             }
 
-            _verbose = options.contains("--verbose");
-            new Main(options.get("--")).process();
+            Main main = new Main(options.get("--"),
+                                 options.contains("--mmap"),
+                                 options.contains("--bytes"));
+            main._verbose = options.contains("--verbose");
+            if (options.contains("--trace")) {
+                main._trace = options.getFirst("--trace");
+            }
+            if (options.contains("--flush")) {
+                main._flush =
+                    MessageStream.FlushPolicy.parse(
+                        options.getFirst("--flush"));
+            }
+            if (options.contains("--group") || options.contains("--wrap")) {
+                main._formatter =
+                    new GroupFormatter(intOption(options, "--group", 5),
+                                       intOption(options, "--wrap", 0),
+                                       System.lineSeparator());
+            }
+            if (options.contains("--parallel")) {
+                main._threads = intOption(options, "--parallel", 0);
+                if (main._threads == 0) {
+                    main._threads =
+                        Runtime.getRuntime().availableProcessors();
+                }
+            }
+            if (options.contains("--cache")) {
+                main._cache =
+                    new SettingsCache(intOption(options, "--cache", 0));
+            }
+            if (options.contains("--table-budget")) {
+                main._tableBudget =
+                    byteCount(options.getFirst("--table-budget"));
+            }
+            if (options.contains("--specialize")) {
+                main._specializer = new Specializer();
+            }
+            if (options.contains("--compile")) {
+                main.compile(options.getFirst("--compile"));
+            } else if (options.contains("--generate")) {
+                main.generate(options.getFirst("--generate"));
+            } else if (options.contains("--bytes")) {
+                main.processBytes(options.getFirst("--bytes"));
+            } else if (options.contains("--daemon")) {
+                main.serve();
+            } else if (options.contains("--serve")) {
+                main.serveSessions(intOption(options, "--serve", 0));
+            } else {
+                main.process();
+            }
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -45,183 +125,508 @@ public final class Main {
         System.exit(1);
     }
 
+    /** Return the value of the numeric option KEY in OPTIONS, or DEFAULT
+     *  if it is absent. */
+    private static int intOption(CommandArgs options, String key,
+                                 int dflt) {
+        if (!options.contains(key)) {
+            return dflt;
+        }
+        try {
+            return Integer.parseInt(options.getFirst(key));
+        } catch (NumberFormatException excp) {
+            throw error("bad value for %s", key);
+        }
+    }
+
+    /** Return the number of bytes denoted by SIZE, a decimal number
+     *  optionally followed by K, M or G (in either case) for units of
+     *  1024, 1024^2 or 1024^3 bytes. */
+    static long byteCount(String size) {
+        int shift = "KMG".indexOf(Character.toUpperCase(
+                                      size.charAt(size.length() - 1)));
+        String digits = shift < 0 ? size : size.substring(0, size.length() - 1);
+        try {
+            long n = Long.parseLong(digits);
+            if (n > Long.MAX_VALUE >> (10 * (shift + 1))) {
+                throw new NumberFormatException();
+            }
+            return n << (10 * (shift + 1));
+        } catch (NumberFormatException excp) {
+            throw error("bad byte count: %s", size);
+        }
+    }
+
     /** Open the necessary files for non-option arguments ARGS (see comment
       *  on main). */
     Main(List<String> args) {
-        _config = getInput(args.get(0));
+        this(args, false);
+    }
+
+    /** Open the necessary files for non-option arguments ARGS (see comment
+      *  on main), memory-mapping the input and output files if MAPPED.
+      *  Mapping requires both files to be named. */
+    Main(List<String> args, boolean mapped) {
+        this(args, mapped, false);
+    }
+
+    /** Open the necessary files for non-option arguments ARGS as above,
+     *  or if BYTES, only record the names of the input and output files
+     *  for processBytes(). */
+    Main(List<String> args, boolean mapped, boolean bytes) {
+        _configName = args.get(0);
+
+        if (bytes) {
+            if (mapped && args.size() < 3) {
+                throw error("--mmap requires INPUT and OUTPUT files");
+            }
+            _mapped = mapped;
+            _inputName = args.size() > 1 ? args.get(1) : null;
+            _outputName = args.size() > 2 ? args.get(2) : null;
+            return;
+        }
+
+        if (mapped) {
+            if (args.size() < 3) {
+                throw error("--mmap requires INPUT and OUTPUT files");
+            }
+            _mapped = true;
+            try {
+                _input = new MappedReader(args.get(1), MAP_WINDOW);
+                _output = new MappedWriter(args.get(2), MAP_WINDOW);
+            } catch (IOException excp) {
+                throw error("could not map %s", excp.getMessage());
+            }
+            _outputIsFile = true;
+            _flush = MessageStream.FlushPolicy.BUFFER;
+            return;
+        }
 
         if (args.size() > 1) {
-            _input = getInput(args.get(1));
+            _input = getReader(args.get(1));
         } else {
-            _input = new Scanner(System.in);
+            _input = new InputStreamReader(System.in);
         }
 
         if (args.size() > 2) {
-            _output = getOutput(args.get(2));
+            _output = getWriter(args.get(2));
+            _outputIsFile = true;
+            _flush = MessageStream.FlushPolicy.BUFFER;
         } else {
-            _output = System.out;
+            _output = new BufferedWriter(new OutputStreamWriter(System.out),
+                                         MessageStream.BUFFER_SIZE);
+            _flush = MessageStream.FlushPolicy.LINE;
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** Return a Reader for the file named NAME. */
+    private Reader getReader(String name) {
         try {
-            return new Scanner(new File(name));
+            return new InputStreamReader(new FileInputStream(name));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a buffered Writer to the file named NAME. */
+    private Writer getWriter(String name) {
         try {
-            return new PrintStream(new File(name));
+            return new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(name)),
+                MessageStream.BUFFER_SIZE);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
     /** Configure an Enigma machine from the contents of configuration
-     *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
-    private void process() {
-        Machine enigmaMachine = readConfig();
-        setUp(enigmaMachine, _input.nextLine());
-        String conMes = "";
-        while (_input.hasNext()) {
-            String eachLine = _input.nextLine();
-            if (eachLine.isBlank()) {
-                eachLine = _input.nextLine();
-                _output.println();
-            }
-            if (eachLine.contains("*")) {
-                enigmaMachine.resetRotors();
-                setUp(enigmaMachine, eachLine);
-                conMes = "";
+     *  file _configName and apply it to the messages in _input, sending the
+     *  results to _output.  With --parallel, untraced messages are
+     *  converted by _threads workers, each with its own machine over the
+     *  same rotors.  _output is closed (or only flushed, if it is the
+     *  standard output) even on an error, so that what was converted
+     *  before the error is kept. */
+    void process() {
+        try {
+            convertMessages();
+        } catch (EnigmaException excp) {
+            try {
+                closeOutput();
+            } catch (EnigmaException closeExcp) {
+                /* EXCP is the error reported. */
+            }
+            throw excp;
+        }
+        closeOutput();
+    }
+
+    /** Convert _input to _output as described for process(), without
+     *  closing _output. */
+    private void convertMessages() {
+        Machine enigmaMachine = readMachine();
+        _alphabet = enigmaMachine.alphabet();
+        if (!_alphabet.isBmp()) {
+            throw error("messages need an alphabet of 16-bit characters");
+        }
+        Tracer tracer = tracer();
+        enigmaMachine.setTracer(tracer);
+        if (_mapped) {
+            for (int k = 0; k < _alphabet.size(); k += 1) {
+                if (_alphabet.toChar(k) > MAX_ASCII) {
+                    throw error("--mmap requires an ASCII alphabet");
+                }
+            }
+        }
+        if (_threads > 0 && tracer == Tracer.NONE) {
+            new SectionStream(() -> new Machine(_alphabet,
+                    enigmaMachine.numRotors(), enigmaMachine.numPawls(),
+                    enigmaMachine.getRotorMap().values()),
+                this::applySettings, _input, _output, _flush, _formatter,
+                _threads).process();
+        } else {
+            new MessageStream(enigmaMachine,
+                (line) -> applySettings(enigmaMachine, line),
+                _input, _output, _flush, _formatter).process();
+        }
+        tracer.flush();
+        if (_verbose) {
+            System.err.printf("settings cache: %d hits, %d misses, "
+                              + "%d evictions%n", _cache.hits(),
+                              _cache.misses(), _cache.evictions());
+            if (_specializer != null) {
+                System.err.printf("specialized classes: %d%n",
+                                  _specializer.generated());
+            }
+        }
+    }
+
+    /** Close _output if it is a file, and otherwise flush it. */
+    private void closeOutput() {
+        try {
+            if (_outputIsFile) {
+                _output.close();
             } else {
-                conMes += enigmaMachine.convert(eachLine.replaceAll(" ", ""));
-                printMessageLine(conMes);
-                conMes = "";
+                _output.flush();
             }
+        } catch (IOException excp) {
+            throw error("could not close output");
+        }
+    }
+
+    /** Configure a machine whose alphabet is Alphabet.bytes() from
+     *  _configName and SETTINGS, a settings line, and convert the file
+     *  _inputName (or the standard input) into _outputName (or the
+     *  standard output) as a single message of raw bytes. */
+    private void processBytes(String settings) {
+        Machine machine = readMachine();
+        _alphabet = machine.alphabet();
+        if (!_alphabet.isBytes()) {
+            throw error("--bytes requires a %d-symbol configuration",
+                        Alphabet.BYTES);
+        }
+        applySettings(machine, settings);
+        ByteStream stream = new ByteStream(machine);
+        if (_mapped) {
+            stream.process(_inputName, _outputName, MAP_WINDOW);
+            return;
+        }
+        try (InputStream in = _inputName == null ? null
+                 : getInputStream(_inputName)) {
+            try (OutputStream out = _outputName == null ? null
+                     : getOutputStream(_outputName)) {
+                stream.process(in == null ? System.in : in,
+                               out == null ? System.out : out);
+            } catch (IOException excp) {
+                throw error("could not write %s: %s", _outputName,
+                            excp.getMessage());
+            }
+        } catch (IOException excp) {
+            throw error("could not close %s: %s", _inputName,
+                        excp.getMessage());
+        }
+    }
+
+    /** Return an InputStream for the file named NAME. */
+    private static InputStream getInputStream(String name) {
+        try {
+            return new FileInputStream(name);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return an OutputStream to the file named NAME. */
+    private static OutputStream getOutputStream(String name) {
+        try {
+            return new FileOutputStream(name);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
         }
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+    /** Serve jobs on the Unix domain socket named _configName until the
+     *  process is stopped, running up to _threads jobs at once (by
+     *  default one per processor), as described in Daemon. */
+    private void serve() {
+        int threads = _threads > 0 ? _threads
+            : Runtime.getRuntime().availableProcessors();
+        Daemon daemon = new Daemon(Paths.get(_configName), threads,
+                                   _cache.capacity(), _specializer);
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::close));
+        daemon.serve();
+    }
+
+    /** Serve sessions with machines configured from _configName on
+     *  loopback port PORT until the process is stopped, as described in
+     *  SessionServer. */
+    private void serveSessions(int port) {
+        SessionServer server = new SessionServer(readMachine(), port,
+                                                 _cache.capacity(),
+                                                 _specializer);
+        System.err.printf("listening on port %d%n", server.port());
+        server.serve();
+    }
+
+    /** Write an image of a machine over Alphabet.bytes() with rotors
+     *  generated from the decimal number SEED to the file _configName, for
+     *  use with --bytes. */
+    private void generate(String seed) {
+        Machine machine;
         try {
-            _alphabet = new Alphabet(_config.nextLine().trim());
-            int numRotors = _config.nextInt();
-            int numPawls = _config.nextInt();
-            ArrayList<Rotor> allRotorsList;
-            allRotorsList = new ArrayList<Rotor>();
-            if (!_config.hasNext()) {
-                throw new EnigmaException("No more rotors in config.");
+            machine = new RotorGenerator(Alphabet.bytes(),
+                                         Long.parseLong(seed)).machine();
+        } catch (NumberFormatException excp) {
+            throw error("bad value for --generate");
+        }
+        try (OutputStream out = new BufferedOutputStream(
+                 new FileOutputStream(_configName))) {
+            ConfigImage.write(machine, out);
+        } catch (IOException excp) {
+            throw error("could not write %s", _configName);
+        }
+    }
+
+    /** Write an image of the configuration in _configName to the file
+     *  named IMAGE, for faster loading by later runs. */
+    private void compile(String image) {
+        Machine machine = readMachine();
+        try (OutputStream out = new BufferedOutputStream(
+                 new FileOutputStream(image))) {
+            ConfigImage.write(machine, out);
+        } catch (IOException excp) {
+            throw error("could not write %s", image);
+        }
+    }
+
+    /** Return an Enigma machine configured from the file _configName,
+     *  which is either a configuration file or an image written by
+     *  compile().  Images are memory-mapped if _mapped. */
+    private Machine readMachine() {
+        Machine machine = readMachine(_configName, _mapped);
+        if (_tableBudget >= 0) {
+            machine.setTableBudget(_tableBudget);
+        }
+        if (_verbose) {
+            System.err.printf("machine tables: %d bytes%n",
+                              machine.footprint());
+        }
+        return machine;
+    }
+
+    /** Return an Enigma machine configured from the file NAME, which is
+     *  either a configuration file or an image written by compile().  The
+     *  file is opened once, so that it may be a pipe.  The image is
+     *  memory-mapped if MAPPED and NAME is a regular file. */
+    static Machine readMachine(String name, boolean mapped) {
+        try (InputStream in =
+                 new BufferedInputStream(getInputStream(name))) {
+            if (!ConfigImage.isImage(in)) {
+                return readConfig(new Lexer(new String(in.readAllBytes()),
+                                            1));
             }
-            while (_config.hasNext()) {
-                allRotorsList.add(readRotor());
+            if (mapped && Files.isRegularFile(Paths.get(name))) {
+                return ConfigImage.read(name, true);
             }
-            return new Machine(_alphabet, numRotors, numPawls, allRotorsList);
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+            return ConfigImage.read(ByteBuffer.wrap(in.readAllBytes()));
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+    }
+
+    /** Return an Enigma machine configured from the contents of
+     *  configuration CONFIG. */
+    private static Machine readConfig(Lexer config) {
+        String chars = config.nextLine().trim();
+        Alphabet alphabet;
+        try {
+            alphabet = new Alphabet(chars);
+        } catch (EnigmaException excp) {
+            throw config.error("%s", excp.getMessage());
+        }
+        int numRotors = config.nextInt("number of rotor slots");
+        int numPawls = config.nextInt("number of pawls");
+        ArrayList<Rotor> allRotorsList;
+        allRotorsList = new ArrayList<Rotor>();
+        if (!config.hasNext()) {
+            throw config.error("No more rotors in config.");
+        }
+        while (config.hasNext()) {
+            allRotorsList.add(readRotor(config, alphabet));
         }
+        return new Machine(alphabet, numRotors, numPawls, allRotorsList);
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
+    /** Return a rotor over ALPHABET, reading its description from
+     *  CONFIG. */
+    private static Rotor readRotor(Lexer config, Alphabet alphabet) {
+        String rName = config.next("rotor name");
+        String rFirst = config.next("rotor type");
+        char type = rFirst.charAt(0);
+        String allCycles = config.cycles();
         try {
-            String rName;
-            String rFirst;
-            rName = _config.next();
-            rFirst = _config.next();
-            String allCycles = "";
-            Permutation rotorPerm;
-            while (_config.hasNext("\\(.*") && _config.hasNextLine()) {
-                allCycles += _config.next() + " ";
-            }
-            rotorPerm = new Permutation(allCycles, _alphabet);
-            if (rFirst.charAt(0) == 'R') {
+            Permutation rotorPerm = new Permutation(allCycles, alphabet);
+            if (type == 'R') {
                 return new Reflector(rName, rotorPerm);
-            } else if (rFirst.charAt(0) == 'N') {
+            } else if (type == 'N') {
                 return new FixedRotor(rName, rotorPerm);
             } else {
                 return new MovingRotor(rName, rotorPerm, rFirst.substring(1));
             }
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
+        } catch (EnigmaException excp) {
+            throw config.error("%s", excp.getMessage());
+        }
+    }
+
+    /** Set M according to SETTINGS as setUp does, reusing the state
+     *  that _cache holds for SETTINGS if there is one. */
+    private void applySettings(Machine M, String settings) {
+        applySettings(M, settings, _cache, _specializer);
+    }
+
+    /** Set M according to SETTINGS as setUp does, reusing the state that
+     *  CACHE holds for SETTINGS if there is one, and otherwise caching the
+     *  state set up, specialized by SPECIALIZER unless that is null. */
+    static void applySettings(Machine M, String settings, SettingsCache cache,
+                              Specializer specializer) {
+        MachineState state = cache.get(settings);
+        if (state != null) {
+            M.setState(state);
+        } else {
+            M.resetRotors();
+            setUp(M, settings);
+            if (specializer != null) {
+                M.setState(specializer.specialize(M.state()));
+            }
+            cache.put(settings, M.state());
         }
     }
 
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
-        int numRotors = M.numRotors();
-        Scanner setting = new Scanner(settings);
-        if (!setting.next().equals("*")) {
-            throw new EnigmaException("Input error: Does not start setting.");
-        }
-        ArrayList<String> allRotors = new ArrayList<String>();
-        for (int eachRotor = 0; eachRotor < numRotors; eachRotor++) {
-            allRotors.add(setting.next());
-        }
-        for (int i = 1; i < allRotors.size(); i++) {
-            if (allRotors.get(i).equals("B")) {
-                throw new EnigmaException("Ref wrong place");
-            }
+    static void setUp(Machine M, String settings) {
+        Lexer setting = new Lexer(settings, 0);
+        if (!setting.next("'*'").equals("*")) {
+            throw setting.error("Input error: Does not start setting.");
         }
         String[] convertedRotors = new String[M.numRotors()];
-        for (int eachRA = 0; eachRA < allRotors.size(); eachRA++) {
-            convertedRotors[eachRA] = allRotors.get(eachRA);
-        }
-        checkRotorsExist(convertedRotors, M);
-        M.insertRotors(convertedRotors);
-        String rotorSetting = setting.next();
-        M.setRotors(rotorSetting);
-        String rotorCycles = "";
-        while (setting.hasNext("[^\\w]\\([^\\)]+\\)")) {
-            rotorCycles += setting.next();
+        for (int k = 0; k < convertedRotors.length; k += 1) {
+            convertedRotors[k] = setting.next("rotor name");
+            if (k > 0 && convertedRotors[k].equals("B")) {
+                throw setting.error("Ref wrong place");
+            }
         }
-        Permutation machineP = new Permutation(rotorCycles, _alphabet);
-        M.setPlugboard(machineP);
-    }
-    private void checkRotorsExist(String[] convertedRotors, Machine M) {
         HashMap<String, Rotor> map = M.getRotorMap();
-        for (String rotor: convertedRotors) {
+        for (String rotor : convertedRotors) {
             if (!map.containsKey(rotor)) {
-                throw new EnigmaException("Bad rotor name");
+                throw setting.error("Bad rotor name");
             }
         }
+        M.insertRotors(convertedRotors);
+        String rotorSetting = setting.next("rotor setting");
+        try {
+            M.setRotors(rotorSetting);
+        } catch (EnigmaException excp) {
+            throw setting.error("%s", excp.getMessage());
+        }
+        String rotorCycles = setting.cycles();
+        try {
+            M.setPlugboard(new Permutation(rotorCycles, M.alphabet()));
+        } catch (EnigmaException excp) {
+            throw setting.error("%s", excp.getMessage());
+        }
     }
 
-    /** Return true iff verbose option specified. */
-    static boolean verbose() {
-        return _verbose;
-    }
-
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        String group = "";
-        while (msg.length() > 5) {
-            group += msg.substring(0, 5) + " ";
-            msg = msg.substring(5);
+    /** Return the tracer requested by the --verbose or --trace options,
+     *  or Tracer.NONE. */
+    private Tracer tracer() {
+        if (_trace != null) {
+            return new JsonTracer(_alphabet, getWriter(_trace));
+        } else if (_verbose) {
+            return new TextTracer(_alphabet,
+                new BufferedWriter(new OutputStreamWriter(System.err)),
+                _flush == MessageStream.FlushPolicy.LINE);
         }
-        group += msg;
-        _output.println(group);
+        return Tracer.NONE;
     }
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private Reader _input;
 
-    /** Source of machine configuration. */
-    private Scanner _config;
+    /** Name of the configuration file or image. */
+    private String _configName;
 
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private Writer _output;
+
+    /** Names of the input and output files for --bytes, or null for the
+     *  standard input and output. */
+    private String _inputName, _outputName;
+
+    /** Size in bytes of the windows in which mapped files are
+     *  processed. */
+    static final int MAP_WINDOW = 1 << 26;
+
+    /** Largest ASCII character. */
+    private static final char MAX_ASCII = 0x7f;
+
+    /** True if the input and output files are memory-mapped. */
+    private boolean _mapped;
+
+    /** True if _output is a file that I opened. */
+    private boolean _outputIsFile;
+
+    /** When _output is flushed. */
+    private MessageStream.FlushPolicy _flush;
+
+    /** Lays out output lines. */
+    private GroupFormatter _formatter = new GroupFormatter();
 
     /** True if --verbose specified. */
-    private static boolean _verbose;
+    private boolean _verbose;
+
+    /** Name of the file named by --trace, or null. */
+    private String _trace;
+
+    /** Number of worker threads for --parallel, or 0 to convert in this
+     *  thread. */
+    private int _threads;
+
+    /** Number of settings lines whose machine states are cached by
+     *  default. */
+    static final int DEFAULT_CACHE = 64;
+
+    /** Total bytes of rotor conversion tables allowed by --table-budget,
+     *  or -1 to give each rotor Rotor.DEFAULT_TABLE_BUDGET. */
+    private long _tableBudget = -1;
+
+    /** Generates machine state classes specialized to each settings
+     *  line's rotors and plugboard, if --specialize was given; otherwise
+     *  null. */
+    private Specializer _specializer;
+
+    /** Configured machine states for recently seen settings lines. */
+    private SettingsCache _cache = new SettingsCache(DEFAULT_CACHE);
 }
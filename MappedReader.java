@@ -0,0 +1,66 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** A Reader for an ASCII file that maps the file into memory one window
+ *  at a time, rather than copying it through read calls and a charset
+ *  decoder.
+ *  @author James Nho Nguyen
+ */
+class MappedReader extends Reader {
+
+    /** A reader for the file named NAME, mapped WINDOW bytes at a time. */
+    MappedReader(String name, int window) throws IOException {
+        _channel = FileChannel.open(Path.of(name), StandardOpenOption.READ);
+        _size = _channel.size();
+        _window = window;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (_buffer == null || !_buffer.hasRemaining()) {
+            if (_mapped == _size) {
+                return -1;
+            }
+            long length = Math.min(_window, _size - _mapped);
+            _buffer = _channel.map(FileChannel.MapMode.READ_ONLY, _mapped,
+                                   length);
+            _mapped += length;
+        }
+        int n = Math.min(len, _buffer.remaining());
+        for (int k = 0; k < n; k += 1) {
+            byte b = _buffer.get();
+            if (b < 0) {
+                throw error("non-ASCII input at byte %d",
+                            _mapped - _buffer.limit() + _buffer.position()
+                            - 1);
+            }
+            cbuf[off + k] = (char) b;
+        }
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _buffer = null;
+        _channel.close();
+    }
+
+    /** Channel of the file being read. */
+    private final FileChannel _channel;
+    /** Size of the file in bytes. */
+    private final long _size;
+    /** Number of bytes mapped at a time. */
+    private final int _window;
+    /** Number of bytes of the file mapped so far. */
+    private long _mapped;
+    /** The current window of the file. */
+    private MappedByteBuffer _buffer;
+}
@@ -0,0 +1,156 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for MappedReader and MappedWriter.  The
+ *  files are mapped a few bytes at a time, so that reads and writes cross
+ *  the boundaries between windows.
+ *  @author James Nho Nguyen
+ */
+public class MappedStreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Bytes mapped at a time. */
+    private static final int WINDOW = 7;
+
+    /** Text longer than several windows. */
+    private static final String TEXT =
+        "HELLO WORLD\nTHE QUICK BROWN FOX\n\nJUMPS OVER\tTHE LAZY DOG\n";
+
+    /** Make a file for each test. */
+    @Before
+    public void setUp() throws IOException {
+        _file = Files.createTempFile("mapped", ".txt");
+    }
+
+    /** Remove the file of a test. */
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(_file);
+    }
+
+    /** Return the contents of the file read with a MappedReader, CHUNK
+     *  characters at a time. */
+    private String read(int chunk) throws IOException {
+        StringBuilder result = new StringBuilder();
+        char[] buf = new char[chunk];
+        try (Reader reader = new MappedReader(_file.toString(), WINDOW)) {
+            for (int n = reader.read(buf, 0, chunk); n >= 0;
+                 n = reader.read(buf, 0, chunk)) {
+                result.append(buf, 0, n);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Write TEXT to the file with a MappedWriter, CHUNK characters at a
+     *  time, flushing after each. */
+    private void write(String text, int chunk) throws IOException {
+        try (Writer writer = new MappedWriter(_file.toString(), WINDOW)) {
+            for (int k = 0; k < text.length(); k += chunk) {
+                writer.write(text, k, Math.min(chunk, text.length() - k));
+                writer.flush();
+            }
+        }
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        Files.writeString(_file, TEXT);
+        for (int chunk : new int[] { 1, 3, WINDOW, 64 }) {
+            assertEquals(TEXT, read(chunk));
+        }
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        for (int chunk : new int[] { 1, 5, WINDOW, 2 * WINDOW, 64 }) {
+            write(TEXT, chunk);
+            assertEquals(TEXT, Files.readString(_file));
+        }
+    }
+
+    @Test
+    public void testWholeWindows() throws IOException {
+        String text = TEXT.substring(0, 3 * WINDOW);
+        write(text, 4);
+        assertEquals(3 * WINDOW, Files.size(_file));
+        assertEquals(text, read(WINDOW));
+    }
+
+    @Test
+    public void testTrimsLongerFile() throws IOException {
+        Files.writeString(_file, TEXT + TEXT);
+        write("SHORT", 2);
+        assertEquals("SHORT", Files.readString(_file));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        write("", 1);
+        assertEquals(0, Files.size(_file));
+        assertEquals("", read(8));
+    }
+
+    @Test
+    public void testNonAsciiInput() throws IOException {
+        Files.write(_file, "ABCDEFGHIJ\u00c9K"
+                    .getBytes(StandardCharsets.UTF_8));
+        try {
+            read(4);
+            fail("non-ASCII input accepted");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage(), excp.getMessage().contains("10"));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNonAsciiOutput() throws IOException {
+        write("ABCDEFGHIJ\u00c9K", 3);
+    }
+
+    @Test
+    public void testMainErrorMidInput() throws IOException {
+        Path config = Files.createTempFile("mapped", ".img");
+        Path input = Files.createTempFile("mapped", ".in");
+        try {
+            Machine mach = navalMachine();
+            writeImage(mach, config);
+            String good = "* B Beta III IV I AXLE (YF) (ZH)\n"
+                + "HELLO WORLD\n".repeat(1000);
+            Files.writeString(input, good + "* B Beta III IV X9 AAAA\n"
+                              + "HELLO WORLD\n");
+            try {
+                new Main(List.of(config.toString(), input.toString(),
+                                 _file.toString()), true).process();
+                fail("bad settings line accepted");
+            } catch (EnigmaException excp) {
+                assertEquals(convert(mach, good), Files.readString(_file));
+            }
+        } finally {
+            Files.deleteIfExists(config);
+            Files.deleteIfExists(input);
+        }
+    }
+
+    /** File read and written by a test. */
+    private Path _file;
+}
@@ -0,0 +1,76 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** A Writer of ASCII text to a file that maps the file into memory one
+ *  window at a time and stores characters directly into the mapping.  The
+ *  file grows a window at a time and is cut to the length written when
+ *  the writer is closed.
+ *  @author James Nho Nguyen
+ */
+class MappedWriter extends Writer {
+
+    /** A writer to the file named NAME, which is created or truncated,
+     *  mapped WINDOW bytes at a time. */
+    MappedWriter(String name, int window) throws IOException {
+        _channel = FileChannel.open(Path.of(name), StandardOpenOption.CREATE,
+                                    StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE,
+                                    StandardOpenOption.TRUNCATE_EXISTING);
+        _window = window;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            if (_buffer == null || !_buffer.hasRemaining()) {
+                _buffer = _channel.map(FileChannel.MapMode.READ_WRITE,
+                                       _written, _window);
+            }
+            int n = Math.min(len, _buffer.remaining());
+            for (int k = 0; k < n; k += 1) {
+                char c = cbuf[off + k];
+                if (c > MAX_ASCII) {
+                    throw error("non-ASCII output character %c", c);
+                }
+                _buffer.put((byte) c);
+            }
+            _written += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Does nothing: characters stored into the mapping are already
+     *  seen by anyone reading the file.  Neither this nor close() forces
+     *  them to the disk, as none of the other writers do. */
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() throws IOException {
+        _buffer = null;
+        _channel.truncate(_written);
+        _channel.close();
+    }
+
+    /** Largest ASCII character. */
+    private static final char MAX_ASCII = 0x7f;
+
+    /** Channel of the file being written. */
+    private final FileChannel _channel;
+    /** Number of bytes mapped at a time. */
+    private final int _window;
+    /** Number of bytes written so far. */
+    private long _written;
+    /** The window of the file currently being written. */
+    private MappedByteBuffer _buffer;
+}
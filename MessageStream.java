@@ -0,0 +1,285 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Converts a stream of messages in the format read by Main: a settings
+ *  line, then message lines, blank lines and further settings lines.
+ *  Input is read and output written through fixed-size buffers, so memory
+ *  use does not depend on the length of lines or of the input.
+ *  @author James Nho Nguyen
+ */
+class MessageStream {
+
+    /** When buffered output is written through to the underlying
+     *  writer. */
+    enum FlushPolicy {
+        /** After every output line. */
+        LINE,
+        /** Before each settings line and at the end of the input. */
+        MESSAGE,
+        /** Only when the output buffer is full and at the end. */
+        BUFFER;
+
+        /** Return the policy named NAME (in any case). */
+        static FlushPolicy parse(String name) {
+            for (FlushPolicy policy : values()) {
+                if (policy.name().equalsIgnoreCase(name)) {
+                    return policy;
+                }
+            }
+            throw error("unknown flush policy: %s", name);
+        }
+    }
+
+    /** A stream converting INPUT with MACHINE and writing the result to
+     *  OUTPUT in groups of five, flushing according to FLUSH.  Each
+     *  settings line is passed to SETTINGS, which should configure MACHINE
+     *  accordingly. */
+    MessageStream(Machine machine, Consumer<String> settings, Reader input,
+                  Writer output, FlushPolicy flush) {
+        this(machine, settings, input, output, flush, new GroupFormatter());
+    }
+
+    /** A stream as above, laying out output lines with FORMATTER. */
+    MessageStream(Machine machine, Consumer<String> settings, Reader input,
+                  Writer output, FlushPolicy flush,
+                  GroupFormatter formatter) {
+        this(machine, settings, input, output, flush, formatter,
+             BUFFER_SIZE);
+    }
+
+    /** A stream as above whose input and message buffers hold
+     *  BUFFERSIZE characters. */
+    MessageStream(Machine machine, Consumer<String> settings, Reader input,
+                  Writer output, FlushPolicy flush,
+                  GroupFormatter formatter, int bufferSize) {
+        _machine = machine;
+        _settings = settings;
+        _input = input;
+        _output = output;
+        _flush = flush;
+        _formatter = formatter;
+        _bufferSize = bufferSize;
+        _in = new char[bufferSize];
+        _message = new char[bufferSize];
+        _out = new char[bufferSize + formatter.maxLength(bufferSize)
+                        + NEWLINE.length()];
+    }
+
+    /** Number the first line of my input LINE in error messages.  It is
+     *  1 by default. */
+    void setFirstLine(int line) {
+        _firstLine = line;
+    }
+
+    /** Convert all of my input.  The first line must be a settings line.
+     *  Blank lines are copied to the output, except those at the end of
+     *  the input.  On an error, the output converted before it is written
+     *  and flushed before the error is thrown. */
+    void process() {
+        try {
+            int c = read();
+            if (c == EOF) {
+                throw error("no settings line");
+            }
+            c = settingsLine(c);
+            int blanks = 0;
+            while (c != EOF) {
+                c = read();
+                _formatter.startLine();
+                while (c >= 0 && Character.isWhitespace(c)) {
+                    if (c != ' ') {
+                        collect(c);
+                    }
+                    c = read();
+                }
+                if (c < 0) {
+                    _messageLength = 0;
+                    blanks += c == EOL ? 1 : 0;
+                    continue;
+                }
+                for (; blanks > 0; blanks -= 1) {
+                    endLine();
+                }
+                if (c == '*') {
+                    _messageLength = 0;
+                    if (_flush == FlushPolicy.MESSAGE) {
+                        flush();
+                    }
+                    c = settingsLine(c);
+                } else {
+                    c = messageLine(c);
+                }
+            }
+            flush();
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        } catch (EnigmaException excp) {
+            try {
+                flush();
+            } catch (IOException | EnigmaException flushExcp) {
+                /* EXCP is the error reported. */
+            }
+            throw excp;
+        }
+    }
+
+    /** Read the rest of a settings line whose first non-blank character
+     *  is C, and apply it.  Returns the terminator of the line. */
+    private int settingsLine(int c) throws IOException {
+        int number = _firstLine + _lines;
+        StringBuilder line = new StringBuilder();
+        for (; c >= 0; c = read()) {
+            line.append((char) c);
+        }
+        try {
+            _settings.accept(line.toString());
+        } catch (EnigmaException excp) {
+            throw error("line %d, %s", number, excp.getMessage());
+        }
+        return c;
+    }
+
+    /** Convert and write the rest of a message line whose first non-blank
+     *  character is C.  Returns the terminator of the line. */
+    private int messageLine(int c) throws IOException {
+        for (; c >= 0; c = read()) {
+            if (c == '*') {
+                throw error("line %d, Input error: Does not start setting.",
+                            _firstLine + _lines);
+            } else if (c != ' ') {
+                collect(c);
+            }
+        }
+        emit();
+        endLine();
+        return c;
+    }
+
+    /** Add C to the message characters waiting to be converted. */
+    private void collect(int c) throws IOException {
+        if (_messageLength == _message.length) {
+            emit();
+        }
+        _message[_messageLength++] = (char) c;
+    }
+
+    /** Convert the characters collected in _message and copy them to the
+     *  output through _formatter. */
+    private void emit() throws IOException {
+        if (_outLength > _bufferSize) {
+            drain();
+        }
+        _machine.convert(_message, 0, _messageLength);
+        _outLength = _formatter.format(_message, 0, _messageLength,
+                                       _out, _outLength);
+        _messageLength = 0;
+    }
+
+    /** End the current output line. */
+    private void endLine() throws IOException {
+        if (_outLength + NEWLINE.length() > _out.length) {
+            drain();
+        }
+        NEWLINE.getChars(0, NEWLINE.length(), _out, _outLength);
+        _outLength += NEWLINE.length();
+        if (_flush == FlushPolicy.LINE) {
+            flush();
+        } else if (_outLength > _bufferSize) {
+            drain();
+        }
+    }
+
+    /** Write _out to the output writer. */
+    private void drain() throws IOException {
+        _output.write(_out, 0, _outLength);
+        _outLength = 0;
+    }
+
+    /** Write _out to the output writer and flush it. */
+    private void flush() throws IOException {
+        drain();
+        _output.flush();
+    }
+
+    /** Return the next input character, EOL at the end of a line (for any
+     *  of "\n", "\r\n" or "\r"), or EOF at the end of the input. */
+    private int read() throws IOException {
+        if (_pos == _limit) {
+            _limit = _input.read(_in, 0, _in.length);
+            _pos = 0;
+            if (_limit <= 0) {
+                _limit = 0;
+                return EOF;
+            }
+        }
+        char c = _in[_pos++];
+        if (_afterCR) {
+            _afterCR = false;
+            if (c == '\n') {
+                return read();
+            }
+        }
+        if (c == '\n') {
+            _lines += 1;
+            return EOL;
+        } else if (c == '\r') {
+            _afterCR = true;
+            _lines += 1;
+            return EOL;
+        }
+        return c;
+    }
+
+    /** Value of read() at the end of the input. */
+    static final int EOF = -1;
+    /** Value of read() at the end of a line. */
+    static final int EOL = -2;
+    /** Default size of the input and message buffers, in characters. */
+    static final int BUFFER_SIZE = 1 << 16;
+    /** Output line separator. */
+    private static final String NEWLINE = System.lineSeparator();
+
+    /** Machine that converts messages. */
+    private final Machine _machine;
+    /** Applies settings lines to _machine. */
+    private final Consumer<String> _settings;
+    /** Source of input. */
+    private final Reader _input;
+    /** Destination of output. */
+    private final Writer _output;
+    /** When _output is flushed. */
+    private final FlushPolicy _flush;
+    /** Lays out converted characters. */
+    private final GroupFormatter _formatter;
+    /** Size of the input and message buffers. */
+    private final int _bufferSize;
+
+    /** Input buffer. */
+    private final char[] _in;
+    /** Index of the next unread character of _in. */
+    private int _pos;
+    /** Number of valid characters in _in. */
+    private int _limit;
+    /** True if the last character read was a carriage return. */
+    private boolean _afterCR;
+    /** Number of my first input line. */
+    private int _firstLine = 1;
+    /** Number of line ends read. */
+    private int _lines;
+
+    /** Message characters waiting to be converted. */
+    private final char[] _message;
+    /** Number of characters in _message. */
+    private int _messageLength;
+
+    /** Output waiting to be written. */
+    private final char[] _out;
+    /** Number of characters in _out. */
+    private int _outLength;
+}
@@ -0,0 +1,148 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MessageStream class.
+ *  @author James Nho Nguyen
+ */
+public class MessageStreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a machine with the identity rotor I in every slot but the
+     *  first, so that it leaves every message unchanged. */
+    private Machine identity() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation("", UPPER)));
+        rotors.add(new MovingRotor("I", new Permutation("", UPPER), "Q"));
+        return new Machine(UPPER, 2, 1, rotors);
+    }
+
+    /** Return the output of processing INPUT with MACHINE, recording the
+     *  settings lines seen in SETTINGS. */
+    private String process(Machine machine, String input,
+                           ArrayList<String> settings) {
+        StringWriter output = new StringWriter();
+        new MessageStream(machine, (line) -> {
+            settings.add(line);
+            machine.resetRotors();
+            machine.insertRotors(new String[] { "R", "I" });
+            machine.setPlugboard(new Permutation("", UPPER));
+        }, new StringReader(input), output,
+            MessageStream.FlushPolicy.BUFFER).process();
+        return output.toString().replace(System.lineSeparator(), "\n");
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testGroupsAndBlankLines() {
+        ArrayList<String> settings = new ArrayList<>();
+        String out = process(identity(),
+                "* R I A\nABC DEFG HIJ KL\n\nABCDE\n  \n* R I A\nXY\n\n\n",
+                settings);
+        assertEquals("ABCDE FGHIJ KL\n\nABCDE\n\nXY\n", out);
+        assertEquals(2, settings.size());
+        assertEquals("* R I A", settings.get(1));
+    }
+
+    @Test
+    public void testSettingsLinePlugboard() {
+        Machine machine = navalMachine();
+        StringWriter output = new StringWriter();
+        new MessageStream(machine, (line) -> Main.setUp(machine, line),
+            new StringReader("* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) "
+                             + "(BY)\nFROM HIS SHOULDER HIAWATHA\n"),
+            output, MessageStream.FlushPolicy.BUFFER).process();
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW" + System.lineSeparator(),
+                     output.toString());
+    }
+
+    @Test
+    public void testLineEndings() {
+        ArrayList<String> settings = new ArrayList<>();
+        String out = process(identity(), "* R I A\r\nABCDEF\r\rGH\rIJ",
+                settings);
+        assertEquals("ABCDE F\n\nGH\nIJ\n", out);
+    }
+
+    @Test
+    public void testLongLine() {
+        StringBuilder line = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int k = 0; k < 3 * MessageStream.BUFFER_SIZE + 3; k += 1) {
+            char c = UPPER_STRING.charAt(k % 26);
+            line.append(c);
+            if (k > 0 && k % 5 == 0) {
+                expected.append(' ');
+            }
+            expected.append(c);
+        }
+        String out = process(identity(), "* R I A\n" + line,
+                new ArrayList<>());
+        assertEquals(expected + "\n", out);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testMisplacedSettings() {
+        process(identity(), "* R I A\nABC * R I A\n", new ArrayList<>());
+    }
+    @Test
+    public void testOutputBeforeErrorKept() {
+        Machine machine = identity();
+        StringWriter output = new StringWriter();
+        try {
+            new MessageStream(machine, (line) -> {
+                machine.insertRotors(new String[] { "R", "I" });
+                machine.setPlugboard(new Permutation("", UPPER));
+            }, new StringReader("* R I A\nHELLO\nWORLD *\n"), output,
+                MessageStream.FlushPolicy.BUFFER).process();
+            fail("bad message line accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("HELLO\n",
+                         output.toString().replace(System.lineSeparator(),
+                                                   "\n"));
+        }
+    }
+
+    @Test
+    public void testMainKeepsOutputBeforeError() throws IOException {
+        Path dir = Files.createTempDirectory("main");
+        Path config = dir.resolve("config.img"), input = dir.resolve("in"),
+            output = dir.resolve("out");
+        try {
+            Machine mach = navalMachine();
+            writeImage(mach, config);
+            String good = "* B Beta III IV I AXLE (YF) (ZH)\n"
+                + "HELLO WORLD\n".repeat(10000);
+            Files.writeString(input, good + "* B Beta III IV X9 AAAA\n");
+            try {
+                new Main(List.of(config.toString(), input.toString(),
+                                 output.toString())).process();
+                fail("bad settings line accepted");
+            } catch (EnigmaException excp) {
+                assertEquals(convert(mach, good), Files.readString(output));
+            }
+        } finally {
+            for (Path file : new Path[] { config, input, output, dir }) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -16,6 +16,15 @@ class MovingRotor extends Rotor {
         super(name, perm);
         _perm = perm;
         _notches = notches;
+        _notchBits = new long[(perm.size() + 63) >>> 6];
+        for (int k = 0, c; k < notches.length(); k += Character.charCount(c)) {
+            c = notches.codePointAt(k);
+            int posn = perm.alphabet().toInt(c);
+            if (posn < 0) {
+                throw error("notch %c not in alphabet", c);
+            }
+            _notchBits[posn >>> 6] |= 1L << posn;
+        }
     }
 
     @Override
@@ -29,6 +38,11 @@ class MovingRotor extends Rotor {
         return _notches;
     }
 
+    @Override
+    boolean atNotch(int posn) {
+        return (_notchBits[posn >>> 6] & (1L << posn)) != 0;
+    }
+
     @Override
     boolean rotates() {
         return true;
@@ -38,4 +52,6 @@ class MovingRotor extends Rotor {
     private Permutation _perm;
     /** Notches. */
     private String _notches;
+    /** Notch positions, one bit per position of my alphabet. */
+    private final long[] _notchBits;
 }
@@ -95,4 +95,67 @@ public class MovingRotorTest {
                 rotor.convertBackward(alpha.indexOf('S')));
     }
 
+    @Test
+    public void checkConvertAtSetting() {
+        setRotor("III", NAVALA, "V");
+        for (int posn = 0; posn < UPPER.size(); posn += 1) {
+            rotor.set(posn);
+            for (int p = 0; p < UPPER.size(); p += 1) {
+                assertEquals(rotor.convertForward(p),
+                        rotor.convertForward(p, posn));
+                assertEquals(rotor.convertBackward(p),
+                        rotor.convertBackward(p, posn));
+            }
+        }
+    }
+
+    @Test
+    public void checkUntabulatedRotor() {
+        StringBuilder chars = new StringBuilder();
+        StringBuilder cycle = new StringBuilder("(");
+        for (int k = 0; k < 300; k += 1) {
+            chars.append((char) ('\u0100' + k));
+            cycle.append((char) ('\u0100' + (k * 7) % 300));
+        }
+        Alphabet wide = new Alphabet(chars.toString());
+        Permutation perm = new Permutation(cycle + ")", wide);
+        rotor = new MovingRotor("W", perm, "");
+        for (int posn : new int[] { 0, 1, 150, 299 }) {
+            rotor.set(posn);
+            for (int p = 0; p < wide.size(); p += 1) {
+                int e = perm.wrap(perm.permute(p + posn) - posn);
+                assertEquals(e, rotor.convertForward(p));
+                assertEquals(p, rotor.convertBackward(e));
+            }
+        }
+    }
+
+    @Test
+    public void checkLayoutsAgree() {
+        Alphabet wide = Alphabet.range(0x4e00, 0x4e00 + 299);
+        Permutation perm = new RotorGenerator(wide, 5).wiring();
+        rotor = new MovingRotor("W", perm, "");
+        assertEquals(Rotor.Layout.BANDED, rotor.layout());
+        assertEquals(16 * 300, rotor.tableBytes());
+        int[][] expected = new int[300][];
+        for (Rotor.Layout layout : Rotor.Layout.values()) {
+            rotor.layout(layout.bytes(300));
+            assertEquals(layout, rotor.layout());
+            for (int posn = 0; posn < 300; posn += 1) {
+                if (expected[posn] == null) {
+                    expected[posn] = new int[300];
+                    for (int p = 0; p < 300; p += 1) {
+                        expected[posn][p] = rotor.convertForward(p, posn);
+                    }
+                }
+                for (int p = 0; p < 300; p += 1) {
+                    int e = expected[posn][p];
+                    assertEquals(e, rotor.convertForward(p, posn));
+                    assertEquals(p, rotor.convertBackward(e, posn));
+                }
+            }
+        }
+        assertEquals(Rotor.Layout.ARITHMETIC, Rotor.Layout.choose(300, 100));
+    }
+
 }
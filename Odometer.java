@@ -0,0 +1,302 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The stepping mechanism of a row of rotor slots: which slots rotate and
+ *  where their notches are.  Positions are kept by the caller as an int[]
+ *  with one entry per slot, slot 0 being the reflector.
+ *  @author James Nho Nguyen
+ */
+class Odometer {
+
+    /** An odometer for the rotors in SLOTS, whose alphabets have SIZE
+     *  characters. */
+    Odometer(Rotor[] slots, int size) {
+        _size = size;
+        int k = slots.length;
+        _rotates = new boolean[k];
+        _words = (size + 63) >>> 6;
+        _notches = new long[k * _words];
+        for (int r = 0; r < k; r += 1) {
+            _rotates[r] = slots[r].rotates();
+            for (int posn = 0; posn < size; posn += 1) {
+                if (slots[r].atNotch(posn)) {
+                    _notches[r * _words + (posn >>> 6)] |= 1L << posn;
+                }
+            }
+        }
+        _notchCount = new int[k];
+        _notchRank = new int[k * (_words + 1)];
+        _adjacent = new boolean[k];
+        for (int r = 0; r < k; r += 1) {
+            for (int w = 0; w < _words; w += 1) {
+                int count = Long.bitCount(_notches[r * _words + w]);
+                _notchRank[r * (_words + 1) + w + 1] =
+                    _notchRank[r * (_words + 1) + w] + count;
+            }
+            _notchCount[r] = _notchRank[r * (_words + 1) + _words];
+            for (int posn = 0; posn < size; posn += 1) {
+                _adjacent[r] |= atNotch(r, posn)
+                    && atNotch(r, posn + 1 == size ? 0 : posn + 1);
+            }
+        }
+        _nextNotch = new int[size];
+        if (k > 0) {
+            int next = -1;
+            for (int i = 2 * size - 1; i >= 0; i -= 1) {
+                if (atNotch(k - 1, i % size)) {
+                    next = i;
+                }
+                _nextNotch[i % size] = next < 0 ? -1 : next - i;
+            }
+        }
+    }
+
+    /** Return the number of slots. */
+    int numSlots() {
+        return _rotates.length;
+    }
+
+    /** Return true iff the rotor in slot R rotates. */
+    boolean rotates(int r) {
+        return _rotates[r];
+    }
+
+    /** Return true iff POSN is a notch position of the rotor in slot R. */
+    boolean atNotch(int r, int posn) {
+        return (_notches[r * _words + (posn >>> 6)] & (1L << posn)) != 0;
+    }
+
+    /** Advance POSITIONS by one character.  A rotor moves if it is the
+     *  fast one, if it is at a notch and its left neighbor rotates, or if
+     *  its right neighbor is at a notch and it rotates.  Working left to
+     *  right, every notch is tested before the rotor carrying it moves. */
+    void step(int[] positions) {
+        int last = positions.length - 1;
+        boolean notchHere = last >= 0 && atNotch(0, positions[0]);
+        boolean rotatesLeft = false;
+        for (int r = 0; r <= last; r += 1) {
+            boolean rotates = _rotates[r];
+            boolean notchRight = r < last && atNotch(r + 1, positions[r + 1]);
+            if (rotates & ((r == last) | (notchHere & rotatesLeft)
+                           | notchRight)) {
+                int posn = positions[r] + 1;
+                positions[r] = posn == _size ? 0 : posn;
+            }
+            notchHere = notchRight;
+            rotatesLeft = rotates;
+        }
+    }
+
+    /** Advance POSITIONS by N >= 0 characters.  After one ordinary step,
+     *  each slot's position is found from the number of times it moves in
+     *  the remaining characters, working leftward from the fast rotor:
+     *  a rotor moves once for each time its right neighbor stands at a
+     *  notch, plus once for each of its own notches it reaches when its
+     *  left neighbor rotates (the double step).  This takes time
+     *  independent of N unless some rotor that double steps, or the rotor
+     *  driving it, has notches at two adjacent positions, when a move of
+     *  one may coincide with the other's; such odometers step only at the
+     *  characters where something other than the fast rotor moves. */
+    void seek(int[] positions, long n) {
+        if (n < 0) {
+            throw error("cannot seek backwards");
+        }
+        if (n == 0 || positions.length == 0) {
+            return;
+        }
+        step(positions);
+        n -= 1;
+        if (n <= positions.length + 1 || !countable(positions)) {
+            skip(positions, n);
+        } else {
+            count(positions, n);
+        }
+    }
+
+    /** Return true iff from POSITIONS, no slot that double steps can be
+     *  at one of its notches when the slot to its right is at one of
+     *  its own, except before the first step. */
+    private boolean countable(int[] positions) {
+        int last = positions.length - 1;
+        for (int r = 1; r < last; r += 1) {
+            if (_rotates[r] && _rotates[r - 1] && !driven(r, positions)
+                && (_adjacent[r] || _rotates[r + 1] && _adjacent[r + 1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return true iff the rotor in slot R, which rotates, moves on every
+     *  character from POSITIONS: it is the fast rotor, or the slot to its
+     *  right holds a fixed rotor standing at a notch. */
+    private boolean driven(int r, int[] positions) {
+        return r == positions.length - 1
+            || !_rotates[r + 1] && atNotch(r + 1, positions[r + 1]);
+    }
+
+    /** Advance POSITIONS, for which countable() holds, by N characters,
+     *  N being greater than the number of slots plus one.  How often a
+     *  slot moves depends on how many times the slot to its right stood
+     *  at a notch in those characters, and on whether it did so at the
+     *  last one.  So for each slot from the right, the number of times it
+     *  stood at a notch is found for the first N - J characters, J running
+     *  from 0 to one more than the number of slots to its left. */
+    private void count(int[] positions, long n) {
+        int last = positions.length - 1;
+        long[] right = new long[last + 3];
+        long[] here = new long[last + 3];
+        for (int r = last; r >= 0; r -= 1) {
+            int q = positions[r];
+            long moves = 0;
+            for (int j = r + 1; j >= 0; j -= 1) {
+                long t = n - j;
+                long notches = 0;
+                if (!_rotates[r]) {
+                    moves = 0;
+                } else if (driven(r, positions)) {
+                    moves = t;
+                    notches = notchesPassed(r, q, t);
+                } else {
+                    long pushes = _rotates[r + 1] ? right[j] : 0;
+                    moves = pushes;
+                    if (r > 0 && _rotates[r - 1]) {
+                        notches = notchesCarried(r, q, pushes);
+                        long end = (q + (pushes + notches) % _size) % _size;
+                        if (atNotch(r, (int) end)
+                            && (pushes == 0 || right[j] == right[j + 1])) {
+                            notches += 1;
+                        }
+                        moves += notches;
+                    }
+                }
+                here[j] = notches;
+            }
+            positions[r] = (int) ((q + moves % _size) % _size);
+            long[] tmp = right;
+            right = here;
+            here = tmp;
+        }
+    }
+
+    /** Return the number of times the rotor in slot R, moving on every
+     *  one of T characters from position Q, stands at a notch. */
+    private long notchesPassed(int r, int q, long t) {
+        int end = (int) (q + t % _size);
+        long result = t / _size * _notchCount[r] - notchesBefore(r, q);
+        if (end > _size) {
+            return result + _notchCount[r] + notchesBefore(r, end - _size);
+        }
+        return result + notchesBefore(r, end);
+    }
+
+    /** Return the number of notch positions the rotor in slot R, starting
+     *  at position Q and double stepping off each one it reaches, leaves
+     *  before its PUSHES-th move from a position that is not a notch. */
+    private long notchesCarried(int r, int q, long pushes) {
+        if (pushes == 0) {
+            return 0;
+        }
+        int others = _size - _notchCount[r];
+        long k = q - notchesBefore(r, q) + pushes - 1;
+        int end = otherPosition(r, (int) (k % others)) + 1;
+        return k / others * _notchCount[r] + notchesBefore(r, end)
+            - notchesBefore(r, q);
+    }
+
+    /** Return the number of notches of the rotor in slot R at positions
+     *  less than POSN, 0 <= POSN <= size. */
+    private int notchesBefore(int r, int posn) {
+        int w = posn >>> 6;
+        int result = _notchRank[r * (_words + 1) + w];
+        if (w < _words) {
+            result += Long.bitCount(_notches[r * _words + w]
+                                    & ((1L << posn) - 1));
+        }
+        return result;
+    }
+
+    /** Return the K-th (from 0) position of the rotor in slot R that is
+     *  not a notch. */
+    private int otherPosition(int r, int k) {
+        int base = r * (_words + 1);
+        int lo = 0, hi = _words - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (64 * mid - _notchRank[base + mid] <= k) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        long others = ~_notches[r * _words + lo];
+        for (int m = k - (64 * lo - _notchRank[base + lo]); m > 0; m -= 1) {
+            others &= others - 1;
+        }
+        return 64 * lo + Long.numberOfTrailingZeros(others);
+    }
+
+    /** Advance POSITIONS by N characters a notch at a time.  While no
+     *  slot other than the fast one is due to move, the fast rotor is
+     *  moved straight to its next notch. */
+    private void skip(int[] positions, long n) {
+        int last = positions.length - 1;
+        while (n > 0) {
+            if (slowRotorsDue(positions)) {
+                step(positions);
+                n -= 1;
+            } else if (!_rotates[last]) {
+                return;
+            } else {
+                int d = _nextNotch[positions[last]];
+                long quiet = d < 0 || last == 0 || !_rotates[last - 1]
+                    ? n : Math.min(n, d);
+                positions[last] = (int) ((positions[last] + quiet) % _size);
+                n -= quiet;
+                if (n > 0) {
+                    step(positions);
+                    n -= 1;
+                }
+            }
+        }
+    }
+
+    /** Return true iff some slot other than the fast one would move on
+     *  the next step of POSITIONS.  If the fast rotor rotates, its being
+     *  at a notch is left out, since that is handled by skip(). */
+    private boolean slowRotorsDue(int[] positions) {
+        int last = positions.length - 1;
+        int limit = _rotates[last] ? last : last + 1;
+        for (int r = 0; r < limit && r < last; r += 1) {
+            boolean left = r > 0 && _rotates[r - 1]
+                && atNotch(r, positions[r]);
+            boolean right = r + 1 < limit && atNotch(r + 1, positions[r + 1]);
+            if (_rotates[r] && (left || right)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Size of the rotors' alphabet. */
+    private final int _size;
+    /** True for each slot whose rotor rotates. */
+    private final boolean[] _rotates;
+    /** Notch positions of each slot's rotor, one bit per position. */
+    private final long[] _notches;
+    /** Number of words of _notches used by each slot. */
+    private final int _words;
+    /** Distance from each position of the fast rotor to its next notch,
+     *  or -1 if it has none. */
+    private final int[] _nextNotch;
+
+    /** Number of notches of each slot's rotor. */
+    private final int[] _notchCount;
+    /** For each slot, the number of its notches at positions below each
+     *  multiple of 64, _words + 1 entries per slot. */
+    private final int[] _notchRank;
+    /** True for each slot whose rotor has notches at two adjacent
+     *  positions. */
+    private final boolean[] _adjacent;
+}
@@ -0,0 +1,121 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Odometer class.
+ *  @author James Nho Nguyen
+ */
+public class OdometerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return an odometer whose slots hold a reflector, a fixed rotor and
+     *  moving rotors with the given NOTCHES, from left to right. */
+    private Odometer odometer(String... notches) {
+        Rotor[] slots = new Rotor[notches.length + 2];
+        slots[0] = new Reflector("B", new Permutation(NAVALA.get("B"), UPPER));
+        slots[1] = new FixedRotor("Beta",
+                new Permutation(NAVALA.get("Beta"), UPPER));
+        for (int k = 0; k < notches.length; k += 1) {
+            slots[k + 2] = new MovingRotor("M" + k,
+                    new Permutation("", UPPER), notches[k]);
+        }
+        return new Odometer(slots, UPPER.size());
+    }
+
+    /** Check that seeking ODO from START by each of OFFSETS gives the same
+     *  positions as stepping it that many times. */
+    private void checkSeek(Odometer odo, int[] start, long... offsets) {
+        for (long n : offsets) {
+            int[] stepped = start.clone();
+            int[] seeked = start.clone();
+            for (long k = 0; k < n; k += 1) {
+                odo.step(stepped);
+            }
+            odo.seek(seeked, n);
+            assertArrayEquals(stepped, seeked);
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testDoubleStep() {
+        Odometer odo = odometer("V", "E", "Q");
+        int[] posns = { 0, 0, 0, 3, 16 };
+        odo.step(posns);
+        assertArrayEquals(new int[] { 0, 0, 0, 4, 17 }, posns);
+        odo.step(posns);
+        assertArrayEquals(new int[] { 0, 0, 1, 5, 18 }, posns);
+    }
+
+    @Test
+    public void testSeekThreeRotors() {
+        Odometer odo = odometer("V", "E", "Q");
+        checkSeek(odo, new int[] { 0, 3, 0, 23, 11 },
+                  0, 1, 25, 26, 27, 650, 16900, 17000, 123457);
+    }
+
+    @Test
+    public void testSeekSixRotors() {
+        Odometer odo = odometer("AN", "E", "Q", "V", "J", "Z");
+        checkSeek(odo, new int[] { 0, 0, 5, 4, 16, 21, 9, 25 },
+                  0, 1, 26, 676, 17577, 200003);
+    }
+
+    @Test
+    public void testSeekFromEveryPosition() {
+        Odometer odo = odometer("AN", "CE", "AP", "CR");
+        for (int k = 0; k < 26 * 26; k += 1) {
+            checkSeek(odo, new int[] { 0, 0, k % 26, k / 26, k % 13, k % 7 },
+                      3, 5, 29, 701);
+        }
+    }
+
+    @Test
+    public void testSeekAdjacentNotches() {
+        checkSeek(odometer("A", "KL", "Q"), new int[] { 0, 0, 3, 9, 14 },
+                  7, 300, 20000);
+        checkSeek(odometer("A", "E", "YZA"), new int[] { 0, 0, 3, 3, 20 },
+                  7, 300, 20000);
+    }
+
+    @Test
+    public void testSeekFar() {
+        Odometer odo = odometer("AN", "E", "Q", "V", "J", "Z");
+        int[] start = { 0, 0, 5, 4, 16, 21, 9, 25 };
+        int[] once = start.clone();
+        odo.seek(once, 4_000_000_000L);
+        int[] twice = start.clone();
+        odo.seek(twice, 2_718_281_828L);
+        odo.seek(twice, 4_000_000_000L - 2_718_281_828L);
+        assertArrayEquals(once, twice);
+        odo.seek(once, Long.MAX_VALUE);
+        odo.seek(twice, Long.MAX_VALUE / 2);
+        odo.seek(twice, Long.MAX_VALUE - Long.MAX_VALUE / 2);
+        assertArrayEquals(once, twice);
+    }
+
+    @Test
+    public void testSeekWithFixedSlot() {
+        Rotor[] slots = {
+            new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)),
+            new MovingRotor("M0", new Permutation("", UPPER), "C"),
+            new MovingRotor("M1", new Permutation("", UPPER), "G"),
+            new FixedRotor("Beta", new Permutation(NAVALA.get("Beta"), UPPER)),
+            new MovingRotor("M2", new Permutation("", UPPER), "DQ"),
+            new MovingRotor("M3", new Permutation("", UPPER), "H"),
+        };
+        Odometer odo = new Odometer(slots, UPPER.size());
+        checkSeek(odo, new int[] { 0, 2, 6, 0, 3, 7 }, 1, 2, 50, 5000);
+    }
+}
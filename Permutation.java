@@ -1,9 +1,13 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
- *  to the characters of an alphabet.
+ *  to the characters of an alphabet.  Permutations never change; the
+ *  algebraic operations (compose, inverse, power, conjugate) return new
+ *  ones, each in time linear in the size of the alphabet.
  *  @author James Nho Nguyen
  */
 class Permutation {
@@ -15,27 +19,116 @@ class Permutation {
      *  Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        _cycles = cycles;
-        _listCycles = cycles.split(" ");
-        for (int each = 0; each < _alphabet.size(); each++) {
-            char alpha = _alphabet.toChar(each);
-            int startLeft;
-            int startRight;
-            if (_cycles.indexOf(alpha) != -1) {
-                startLeft = _cycles.indexOf(alpha);
-                startRight = _cycles.lastIndexOf(alpha);
-                if (startRight != startLeft) {
-                    throw new EnigmaException("Duplicate letters Cycle");
+        int n = alphabet.size();
+        _forward = new int[n];
+        _inverse = new int[n];
+        _inCycle = new boolean[n];
+        for (int each = 0; each < n; each += 1) {
+            _forward[each] = each;
+            _inverse[each] = each;
+        }
+        compile(cycles);
+    }
+
+    /** A permutation of ALPHABET taking each index K to FORWARD[K]. */
+    Permutation(int[] forward, Alphabet alphabet) {
+        int n = alphabet.size();
+        if (forward.length != n) {
+            throw error("permutation table does not match alphabet");
+        }
+        _alphabet = alphabet;
+        _forward = forward.clone();
+        _inverse = new int[n];
+        _inCycle = new boolean[n];
+        for (int k = 0; k < n; k += 1) {
+            int image = _forward[k];
+            if (image < 0 || image >= n || _inCycle[image]) {
+                throw error("permutation table is not a permutation");
+            }
+            _inCycle[image] = true;
+            _inverse[image] = k;
+        }
+    }
+
+    /** A permutation of ALPHABET taking each index K to FORWARD[K], whose
+     *  inverse is INVERSE.  Both arrays are kept, not copied, and are
+     *  assumed to be correct. */
+    private Permutation(Alphabet alphabet, int[] forward, int[] inverse) {
+        _alphabet = alphabet;
+        _forward = forward;
+        _inverse = inverse;
+        _inCycle = null;
+    }
+
+    /** Return a permutation of my alphabet taking each index K to
+     *  FORWARD[K], which is a permutation.  FORWARD is kept, not
+     *  copied. */
+    private Permutation derived(int[] forward) {
+        int[] inverse = new int[forward.length];
+        for (int k = 0; k < forward.length; k += 1) {
+            inverse[forward[k]] = k;
+        }
+        return new Permutation(_alphabet, forward, inverse);
+    }
+
+    /** Parse CYCLES, which is in cycle notation, into my lookup tables. Each
+     *  character is looked at once, so this is linear in CYCLES' length. */
+    private void compile(String cycles) {
+        int start = -1;
+        for (int k = 0; k < cycles.length(); k += 1) {
+            char c = cycles.charAt(k);
+            if (c == '(') {
+                if (start >= 0) {
+                    throw error("Nested cycle in %s", cycles);
                 }
+                start = k + 1;
+            } else if (c == ')') {
+                if (start < 0) {
+                    throw error("Unmatched ) in %s", cycles);
+                }
+                addCycle(cycles.substring(start, k));
+                start = -1;
+            } else if (start < 0 && !Character.isWhitespace(c)) {
+                throw error("Character %c outside of a cycle", c);
             }
         }
+        if (start >= 0) {
+            throw error("Unterminated cycle in %s", cycles);
+        }
     }
+
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
+     *  c0c1...cm.  Each c is a code point, which may take two chars. */
     private void addCycle(String cycle) {
-        _cycles += " " + cycle;
-        _listCycles = _cycles.split(" ");
+        int first = -1;
+        int prev = -1;
+        for (int k = 0, c; k < cycle.length(); k += Character.charCount(c)) {
+            c = cycle.codePointAt(k);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            int index = _alphabet.toInt(c);
+            if (index < 0) {
+                throw error("Character %c not in alphabet", c);
+            }
+            if (_inCycle[index]) {
+                throw new EnigmaException("Duplicate letters Cycle");
+            }
+            _inCycle[index] = true;
+            if (prev < 0) {
+                first = index;
+            } else {
+                _forward[prev] = index;
+                _inverse[index] = prev;
+            }
+            prev = index;
+        }
+        if (first >= 0) {
+            _forward[prev] = first;
+            _inverse[first] = prev;
+        }
     }
+
     /** Return the value of P modulo the size of this permutation. */
     final int wrap(int p) {
         int r = p % size();
@@ -44,104 +137,167 @@ class Permutation {
         }
         return r;
     }
+
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return _alphabet.size();
+        return _forward.length;
     }
+
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        int wrapPerm = wrap(p);
-        char intToChar = _alphabet.toChar(wrapPerm);
-        return _alphabet.toInt(permute(intToChar));
+        if (p < 0 || p >= _forward.length) {
+            p = wrap(p);
+        }
+        return _forward[p];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        int wrapInvert = wrap(c);
-        char intToChar = _alphabet.toChar(wrapInvert);
-        return _alphabet.toInt(invert(intToChar));
+        if (c < 0 || c >= _inverse.length) {
+            c = wrap(c);
+        }
+        return _inverse[c];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        int counter = 0;
-        for (String eachCycle: _listCycles) {
-            if (eachCycle.indexOf(p) > -1) {
-                int charToInt = eachCycle.indexOf(p);
-                char intToChar;
-                if (charToInt == eachCycle.length() - 2) {
-                    charToInt = 1;
-                    intToChar = eachCycle.charAt(charToInt);
-                    return intToChar;
-                } else {
-                    charToInt += 1;
-                    intToChar = eachCycle.charAt(charToInt);
-                    return intToChar;
-                }
-            } else if (eachCycle.indexOf(p) == -1) {
-                counter += 1;
-            } else {
-                int charToInt = eachCycle.indexOf(p);
-                charToInt++;
-                char intToChar = eachCycle.charAt(charToInt);
-                return intToChar;
-            }
-        }
-        if (counter == _listCycles.length) {
+        int index = _alphabet.toInt(p);
+        if (index < 0) {
             return p;
         }
-        return p;
+        return _alphabet.toChar(_forward[index]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        int counter = 0;
-        for (String eachCycle : _listCycles) {
-            if (eachCycle.indexOf(c) > -1) {
-                int charToInt = eachCycle.indexOf(c);
-                char intToChar;
-                if (charToInt == 1) {
-                    charToInt = eachCycle.length() - 2;
-                    intToChar = eachCycle.charAt(charToInt);
-                    return intToChar;
-                } else {
-                    charToInt -= 1;
-                    intToChar = eachCycle.charAt(charToInt);
-                    return intToChar;
-                }
-            } else if (eachCycle.indexOf(c) == -1) {
-                counter += 1;
+        int index = _alphabet.toInt(c);
+        if (index < 0) {
+            return c;
+        }
+        return _alphabet.toChar(_inverse[index]);
+    }
+
+    /** Return a table of this permutation: the image of each index, in
+     *  order. */
+    int[] table() {
+        return _forward.clone();
+    }
+
+    /** Return the permutation that applies OTHER and then me, that is,
+     *  this o OTHER, taking each index P to permute(OTHER.permute(P)).
+     *  OTHER must permute an alphabet of the same size. */
+    Permutation compose(Permutation other) {
+        if (other.size() != size()) {
+            throw error("cannot compose permutations of different sizes");
+        }
+        int[] forward = new int[size()];
+        for (int p = 0; p < forward.length; p += 1) {
+            forward[p] = _forward[other._forward[p]];
+        }
+        return derived(forward);
+    }
+
+    /** Return the inverse of this permutation. */
+    Permutation inverse() {
+        return new Permutation(_alphabet, _inverse, _forward);
+    }
+
+    /** Return this permutation applied K times, where K may be negative.
+     *  Takes time linear in size() whatever K is, by moving each index K
+     *  places along its cycle. */
+    Permutation power(long k) {
+        int[] forward = new int[size()];
+        for (int[] cycle : cycles()) {
+            int length = cycle.length;
+            int shift = (int) Math.floorMod(k, (long) length);
+            for (int j = 0; j < length; j += 1) {
+                int to = j + shift;
+                forward[cycle[j]] = cycle[to >= length ? to - length : to];
             }
-            if (counter == _listCycles.length) {
-                return (c);
+        }
+        return derived(forward);
+    }
+
+    /** Return the conjugate of this permutation by the rotation rho^K,
+     *  where rho takes each index P to P + 1 modulo size().  That is
+     *  rho^-K o this o rho^K, which takes P to permute(P + K) - K (modulo
+     *  size()), and is the substitution made by a rotor with this
+     *  permutation at setting K. */
+    Permutation conjugate(int k) {
+        int n = size();
+        k = wrap(k);
+        int[] forward = new int[n];
+        int[] inverse = new int[n];
+        for (int p = 0; p < n; p += 1) {
+            int q = p + k >= n ? p + k - n : p + k;
+            int f = _forward[q] - k;
+            forward[p] = f < 0 ? f + n : f;
+            int b = _inverse[q] - k;
+            inverse[p] = b < 0 ? b + n : b;
+        }
+        return new Permutation(_alphabet, forward, inverse);
+    }
+
+    /** Return the cycles of this permutation, including those of length
+     *  1, as arrays of indices.  Each cycle starts at its smallest index,
+     *  and the cycles are in increasing order of those. */
+    int[][] cycles() {
+        int n = size();
+        boolean[] seen = new boolean[n];
+        int[] order = new int[n];
+        int[] starts = new int[n + 1];
+        int count = 0, filled = 0;
+        for (int p = 0; p < n; p += 1) {
+            if (!seen[p]) {
+                starts[count] = filled;
+                count += 1;
+                for (int q = p; !seen[q]; q = _forward[q]) {
+                    seen[q] = true;
+                    order[filled] = q;
+                    filled += 1;
+                }
             }
-        } return c;
+        }
+        starts[count] = filled;
+        int[][] result = new int[count][];
+        for (int c = 0; c < count; c += 1) {
+            result[c] = Arrays.copyOfRange(order, starts[c], starts[c + 1]);
+        }
+        return result;
+    }
+
+    /** Return the approximate number of bytes used by my tables. */
+    long footprint() {
+        return 9L * size();
     }
+
     /** Return the alphabet used to initialize this Permutation. */
     Alphabet alphabet() {
         return _alphabet;
     }
+
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        int notInCycleCounter = 0;
-        for (int eachL = 0; eachL < _alphabet.size(); eachL++) {
-            char eachLetter = _alphabet.toChar(eachL);
-            for (String eachCycle: _listCycles) {
-                if (eachCycle.indexOf(eachLetter) == -1) {
-                    notInCycleCounter++;
-                }
+        for (int each = 0; each < _forward.length; each += 1) {
+            if (_forward[each] == each) {
+                return false;
             }
         }
-        return notInCycleCounter == 0;
+        return true;
     }
+
     /** Alphabet of this permutation. */
-    private Alphabet _alphabet;
-    /** Cycles. */
-    private String _cycles;
-    /** List of Cycles. */
-    private String[] _listCycles;
+    private final Alphabet _alphabet;
+    /** Image of each index under this permutation. */
+    private final int[] _forward;
+    /** Image of each index under the inverse of this permutation. */
+    private final int[] _inverse;
+    /** True for each index that has already appeared in some cycle (or
+     *  as an image in the table this permutation was built from).  Null
+     *  for permutations computed from others. */
+    private final boolean[] _inCycle;
 }
@@ -168,6 +168,83 @@ public class PermutationTest {
     public void isDerangementTest() {
         Permutation derangementTest2 = new Permutation("(ABCD) (EFGH)",
                 new Alphabet("ABCDEFGH"));
-        assertFalse(derangementTest2.derangement());
+        assertTrue(derangementTest2.derangement());
+    }
+    @Test
+    public void testAdjacentCycles() {
+        perm = new Permutation("(AVOLDRWFIUQ)(BZKSMNHYC) (EGTJPX)", UPPER);
+        checkPerm("adjacent", UPPER_STRING, "VZBRGITYUPSDNHLXAWMJQOFECK");
+    }
+    @Test
+    public void testNavalRotors() {
+        for (String name : NAVALA_MAP.keySet()) {
+            perm = new Permutation(NAVALA.get(name), UPPER);
+            checkPerm(name, UPPER_STRING, NAVALA_MAP.get(name));
+        }
+    }
+    @Test(expected = EnigmaException.class)
+    public void testUnknownCharacter() {
+        new Permutation("(AB1)", new Alphabet("ABCD"));
+    }
+    @Test(expected = EnigmaException.class)
+    public void testUnterminatedCycle() {
+        new Permutation("(AB) (CD", new Alphabet("ABCD"));
+    }
+
+    @Test
+    public void testCompose() {
+        Permutation p = new Permutation("(ABC)", UPPER);
+        Permutation q = new Permutation("(AD) (BE)", UPPER);
+        Permutation pq = p.compose(q);
+        for (int c = 0; c < 26; c += 1) {
+            assertEquals(p.permute(q.permute(c)), pq.permute(c));
+            assertEquals(c, pq.invert(pq.permute(c)));
+        }
+        assertEquals('B', pq.permute('D'));
+        assertEquals('D', pq.permute('A'));
+    }
+
+    @Test
+    public void testInverseAndPower() {
+        Permutation p = new Permutation(NAVALA.get("I"), UPPER);
+        assertArrayEquals(new Permutation("", UPPER).table(),
+                          p.compose(p.inverse()).table());
+        Permutation cube = p.compose(p.compose(p));
+        assertArrayEquals(cube.table(), p.power(3).table());
+        assertArrayEquals(p.inverse().power(3).table(),
+                          p.power(-3).table());
+        assertArrayEquals(p.table(), p.power(1L << 40).compose(
+                              p.power(-(1L << 40) + 1)).table());
+    }
+
+    @Test
+    public void testConjugate() {
+        Permutation p = new Permutation(NAVALA.get("III"), UPPER);
+        Rotor rotor = new FixedRotor("III", p);
+        for (int k : new int[] { 0, 1, 13, 25, 27, -1 }) {
+            Permutation conj = p.conjugate(k);
+            for (int c = 0; c < 26; c += 1) {
+                assertEquals(rotor.convertForward(c, p.wrap(k)),
+                             conj.permute(c));
+                assertEquals(rotor.convertBackward(c, p.wrap(k)),
+                             conj.invert(c));
+            }
+        }
+    }
+
+    @Test
+    public void testCycles() {
+        Permutation p = new Permutation("(DCB) (EF)", new Alphabet("ABCDEF"));
+        int[][] cycles = p.cycles();
+        assertEquals(3, cycles.length);
+        assertArrayEquals(new int[] { 0 }, cycles[0]);
+        assertArrayEquals(new int[] { 1, 3, 2 }, cycles[1]);
+        assertArrayEquals(new int[] { 4, 5 }, cycles[2]);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testComposeSizes() {
+        new Permutation("", UPPER).compose(
+            new Permutation("", new Alphabet("AB")));
     }
 }
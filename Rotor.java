@@ -7,11 +7,115 @@ import static enigma.EnigmaException.*;
  */
 class Rotor {
 
-    /** A rotor named NAME whose permutation is given by PERM. */
+    /** The ways a rotor may convert a character at a given setting, from
+     *  the fastest and largest to the slowest and smallest.  Each rotor
+     *  uses the first layout whose tables fit its memory budget. */
+    enum Layout {
+        /** A table of every conversion at every setting: 8 * size^2
+         *  bytes, one load per conversion. */
+        DENSE,
+        /** The permutation and its inverse repeated twice, so that a
+         *  conversion at any setting is one load and a branch-free
+         *  subtraction: 16 * size bytes. */
+        BANDED,
+        /** No tables of its own: each conversion is computed from the
+         *  permutation with modular arithmetic. */
+        ARITHMETIC;
+
+        /** Return the number of bytes of tables I need for a rotor over
+         *  SIZE characters. */
+        long bytes(int size) {
+            switch (this) {
+            case DENSE:
+                return (long) size * size > Integer.MAX_VALUE
+                    ? Long.MAX_VALUE : 8L * size * size;
+            case BANDED:
+                return 16L * size;
+            default:
+                return 0;
+            }
+        }
+
+        /** Return the fastest layout for a rotor over SIZE characters
+         *  whose tables take at most BUDGET bytes. */
+        static Layout choose(int size, long budget) {
+            for (Layout layout : values()) {
+                if (layout.bytes(size) <= budget) {
+                    return layout;
+                }
+            }
+            return ARITHMETIC;
+        }
+    }
+
+    /** A rotor named NAME whose permutation is given by PERM, with
+     *  conversion tables of at most DEFAULT_TABLE_BUDGET bytes. */
     Rotor(String name, Permutation perm) {
         _name = name;
         _permutation = perm;
+        _size = perm.size();
         _setting = 0;
+        layout(DEFAULT_TABLE_BUDGET);
+    }
+
+    /** Rebuild my conversion tables in the fastest layout that takes at
+     *  most BUDGET bytes.  Conversions in progress in other threads are
+     *  unaffected, but this should be called before I am shared so that
+     *  they all see the new tables. */
+    void layout(long budget) {
+        Layout layout = Layout.choose(_size, budget);
+        if (_tables != null && _tables._layout == layout) {
+            return;
+        }
+        int n = _size;
+        int[] forward = null, backward = null;
+        if (layout == Layout.DENSE) {
+            forward = new int[n * n];
+            backward = new int[n * n];
+            for (int posn = 0; posn < n; posn += 1) {
+                for (int p = 0; p < n; p += 1) {
+                    forward[posn * n + p] =
+                        shift(_permutation, p, posn, true);
+                    backward[posn * n + p] =
+                        shift(_permutation, p, posn, false);
+                }
+            }
+        } else if (layout == Layout.BANDED) {
+            forward = new int[2 * n];
+            backward = new int[2 * n];
+            for (int q = 0; q < 2 * n; q += 1) {
+                forward[q] = _permutation.permute(q % n);
+                backward[q] = _permutation.invert(q % n);
+            }
+        }
+        _tables = new Tables(layout, forward, backward);
+    }
+
+    /** Return the layout of my conversion tables. */
+    Layout layout() {
+        return _tables._layout;
+    }
+
+    /** Return the number of bytes taken by my conversion tables. */
+    long tableBytes() {
+        return _tables._layout.bytes(_size);
+    }
+
+    /** Return the conversion of P by PERM (or by its inverse if not
+     *  FORWARD) when the rotor is at setting POSN, computed without the
+     *  per-setting tables.  P and POSN are in the range 0..size()-1. */
+    private static int shift(Permutation perm, int p, int posn,
+                             boolean forward) {
+        int n = perm.size();
+        int q = p + posn;
+        if (q >= n) {
+            q -= n;
+        }
+        int r = (forward ? perm.permute(q) : perm.invert(q)) - posn;
+        if (r < 0) {
+            r += n;
+        }
+        return r;
     }
 
     /** Return my name. */
@@ -31,7 +135,7 @@ class Rotor {
 
     /** Return the size of my alphabet. */
     int size() {
-        return _permutation.size();
+        return _size;
     }
 
     /** Return true iff I have a ratchet and can move. */
@@ -51,36 +155,97 @@ class Rotor {
 
     /** Set setting() to POSN.  */
     void set(int posn) {
-        _setting = permutation().wrap(posn);
+        assign(permutation().wrap(posn));
     }
 
     /** Set setting() to character CPOSN. */
     void set(char cposn) {
-        _setting = alphabet().toInt(cposn);
+        int posn = alphabet().toInt(cposn);
+        if (posn < 0) {
+            throw error("setting %c not in alphabet", cposn);
+        }
+        assign(posn);
+    }
+
+    /** Make POSN, which is in the range 0..size()-1, my setting. */
+    private void assign(int posn) {
+        _setting = posn;
+    }
+
+    /** Return the conversion of P (an integer in the range 0..size()-1)
+     *  according to my permutation when I am at setting POSN. */
+    int convertForward(int p, int posn) {
+        Tables tables = _tables;
+        if (tables._layout == Layout.DENSE) {
+            return tables._forward[posn * _size + p];
+        } else if (tables._layout == Layout.BANDED) {
+            int r = tables._forward[p + posn] - posn;
+            return r + ((r >> 31) & _size);
+        }
+        return shift(_permutation, p, posn, true);
+    }
+
+    /** Return the conversion of E (an integer in the range 0..size()-1)
+     *  according to the inverse of my permutation when I am at setting
+     *  POSN. */
+    int convertBackward(int e, int posn) {
+        Tables tables = _tables;
+        if (tables._layout == Layout.DENSE) {
+            return tables._backward[posn * _size + e];
+        } else if (tables._layout == Layout.BANDED) {
+            int r = tables._backward[e + posn] - posn;
+            return r + ((r >> 31) & _size);
+        }
+        return shift(_permutation, e, posn, false);
+    }
+
+    /** Replace each element V of VALUES, which are integers in the range
+     *  0..size()-1, by convertForward(V, POSN). */
+    void convertForward(int[] values, int posn) {
+        Tables tables = _tables;
+        convertAll(values, posn, tables._layout, tables._forward, true);
+    }
+
+    /** Replace each element E of VALUES, which are integers in the range
+     *  0..size()-1, by convertBackward(E, POSN). */
+    void convertBackward(int[] values, int posn) {
+        Tables tables = _tables;
+        convertAll(values, posn, tables._layout, tables._backward, false);
+    }
+
+    /** Convert each element of VALUES at setting POSN in one pass, using
+     *  TABLE, which is laid out according to LAYOUT and converts FORWARD
+     *  or backward. */
+    private void convertAll(int[] values, int posn, Layout layout,
+                            int[] table, boolean forward) {
+        int n = _size;
+        if (layout == Layout.DENSE) {
+            int row = posn * n;
+            for (int k = 0; k < values.length; k += 1) {
+                values[k] = table[row + values[k]];
+            }
+        } else if (layout == Layout.BANDED) {
+            for (int k = 0; k < values.length; k += 1) {
+                int r = table[values[k] + posn] - posn;
+                values[k] = r + ((r >> 31) & n);
+            }
+        } else {
+            for (int k = 0; k < values.length; k += 1) {
+                values[k] = shift(_permutation, values[k], posn, forward);
+            }
+        }
     }
 
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int result;
-        result = permutation().permute(p + setting());
-        result = permutation().wrap(result - setting());
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
-        }
-        return result;
+        return convertForward(p, _setting);
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int result;
-        result = permutation().invert(e + setting());
-        result = permutation().wrap(result - setting());
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
-        }
-        return result;
+        return convertBackward(e, _setting);
     }
 
     /** Returns the positions of the notches, as a string giving the letters
@@ -92,10 +257,12 @@ class Rotor {
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
-        char alphabetSetting = alphabet().toChar(_setting);
-        if (notches().contains(String.valueOf(alphabetSetting))) {
-            return true;
-        }
+        return atNotch(_setting);
+    }
+
+    /** Returns true iff POSN (in the range 0..size()-1) is one of my
+     *  notch positions. */
+    boolean atNotch(int posn) {
         return false;
     }
 
@@ -108,11 +275,39 @@ class Rotor {
         return "Rotor " + _name;
     }
 
+    /** Conversion tables of a rotor in one layout. */
+    private static final class Tables {
+        /** Tables in LAYOUT, FORWARD and BACKWARD being null for
+         *  Layout.ARITHMETIC. */
+        Tables(Layout layout, int[] forward, int[] backward) {
+            _layout = layout;
+            _forward = forward;
+            _backward = backward;
+        }
+
+        /** How the tables are laid out. */
+        private final Layout _layout;
+        /** Forward conversions.  In a DENSE layout, that of P at setting
+         *  S is at index S * size() + P; in a BANDED one, entry Q is the
+         *  image of Q mod size(). */
+        private final int[] _forward;
+        /** Backward conversions, laid out as _forward. */
+        private final int[] _backward;
+    }
+
+    /** Default number of bytes of conversion tables per rotor, which is
+     *  enough for a DENSE layout of 256 characters. */
+    static final long DEFAULT_TABLE_BUDGET = 1 << 19;
+
     /** My name. */
     private final String _name;
 
     /** The permutation implemented by this rotor in its 0 position. */
-    private Permutation _permutation;
+    private final Permutation _permutation;
+    /** Size of my alphabet. */
+    private final int _size;
     /** Setting. */
     private int _setting;
+    /** My conversion tables, see layout(). */
+    private Tables _tables;
 }
@@ -0,0 +1,116 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Makes a set of random rotors over an arbitrary alphabet, for alphabets
+ *  such as Alphabet.bytes() that no configuration file is written for.
+ *  The same alphabet and seed always give the same rotors.
+ *  @author James Nho Nguyen
+ */
+class RotorGenerator {
+
+    /** A generator of rotors over ALPHABET, which must have an even
+     *  number of characters, drawing from a random sequence seeded with
+     *  SEED. */
+    RotorGenerator(Alphabet alphabet, long seed) {
+        if (alphabet.size() < 2 || alphabet.size() % 2 != 0) {
+            throw error("generated rotors need an even-sized alphabet");
+        }
+        _alphabet = alphabet;
+        _random = new Random(seed);
+    }
+
+    /** Return a machine with NUMROTORS slots and PAWLS pawls whose
+     *  available rotors are REFLECTORS reflectors named R1, R2, ...,
+     *  FIXED non-moving rotors named F1, ..., and MOVING moving rotors
+     *  named M1, ..., each with NOTCHES notches. */
+    Machine machine(int numRotors, int pawls, int reflectors, int fixed,
+                    int moving, int notches) {
+        if (reflectors < 1 || moving < pawls
+            || reflectors + fixed + moving < numRotors) {
+            throw error("too few rotors for %d slots", numRotors);
+        }
+        List<Rotor> rotors = new ArrayList<>();
+        for (int k = 1; k <= reflectors; k += 1) {
+            rotors.add(new Reflector("R" + k, reflection()));
+        }
+        for (int k = 1; k <= fixed; k += 1) {
+            rotors.add(new FixedRotor("F" + k, wiring()));
+        }
+        for (int k = 1; k <= moving; k += 1) {
+            rotors.add(new MovingRotor("M" + k, wiring(), notches(notches)));
+        }
+        return new Machine(_alphabet, numRotors, pawls, rotors);
+    }
+
+    /** Return a machine with the usual five slots and three pawls, and
+     *  DEFAULT_ROTORS moving rotors to choose from. */
+    Machine machine() {
+        return machine(5, 3, 2, 2, DEFAULT_ROTORS, 1);
+    }
+
+    /** Return a random permutation of my alphabet. */
+    Permutation wiring() {
+        int[] forward = shuffle();
+        return new Permutation(forward, _alphabet);
+    }
+
+    /** Return a random permutation of my alphabet that is its own inverse
+     *  and has no fixed points, as a reflector's must be. */
+    Permutation reflection() {
+        int[] order = shuffle();
+        int[] forward = new int[order.length];
+        for (int k = 0; k < order.length; k += 2) {
+            forward[order[k]] = order[k + 1];
+            forward[order[k + 1]] = order[k];
+        }
+        return new Permutation(forward, _alphabet);
+    }
+
+    /** Return the characters at N distinct random positions, in
+     *  alphabet order. */
+    String notches(int n) {
+        boolean[] chosen = new boolean[_alphabet.size()];
+        for (int k = 0; k < n && k < chosen.length; k += 1) {
+            int posn;
+            do {
+                posn = _random.nextInt(chosen.length);
+            } while (chosen[posn]);
+            chosen[posn] = true;
+        }
+        StringBuilder result = new StringBuilder();
+        for (int posn = 0; posn < chosen.length; posn += 1) {
+            if (chosen[posn]) {
+                result.appendCodePoint(_alphabet.toCodePoint(posn));
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the indices of my alphabet in a random order. */
+    private int[] shuffle() {
+        int[] result = new int[_alphabet.size()];
+        for (int k = 0; k < result.length; k += 1) {
+            result[k] = k;
+        }
+        for (int k = result.length - 1; k > 0; k -= 1) {
+            int j = _random.nextInt(k + 1);
+            int t = result[k];
+            result[k] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    /** Number of moving rotors made by machine(). */
+    static final int DEFAULT_ROTORS = 8;
+
+    /** Alphabet of the rotors made. */
+    private final Alphabet _alphabet;
+    /** Source of the wirings and notches. */
+    private final Random _random;
+}
@@ -0,0 +1,250 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.*;
+
+/** Converts a stream of messages as MessageStream does, but splits it at
+ *  settings lines into sections that are converted concurrently, each
+ *  worker thread using a machine of its own.  Converted sections are
+ *  written in their original order.  Blank lines at the end of a section
+ *  are held back and written only if another section follows, so the
+ *  output is the same as MessageStream's.  Each section in flight is held
+ *  in memory.
+ *  @author James Nho Nguyen
+ */
+class SectionStream {
+
+    /** A stream converting INPUT and writing the result to OUTPUT with
+     *  THREADS workers, each of which gets its machine from MACHINES.
+     *  Each settings line is passed to SETTINGS together with the machine
+     *  of the worker that reads it.  Output lines are laid out by copies
+     *  of FORMATTER, and OUTPUT is flushed after each section unless FLUSH
+     *  is BUFFER. */
+    SectionStream(Supplier<Machine> machines,
+                  BiConsumer<Machine, String> settings, Reader input,
+                  Writer output, MessageStream.FlushPolicy flush,
+                  GroupFormatter formatter, int threads) {
+        if (threads < 1) {
+            throw error("need at least one thread");
+        }
+        _machines = ThreadLocal.withInitial(machines);
+        _settings = settings;
+        _input = input;
+        _output = output;
+        _flush = flush;
+        _formatter = formatter;
+        _threads = threads;
+    }
+
+    /** Convert all of my input.  The first line must be a settings line.
+     *  If a section cannot be converted, the sections before it are
+     *  written and its error is thrown. */
+    void process() {
+        ExecutorService workers = Executors.newFixedThreadPool(_threads);
+        try {
+            ArrayDeque<Future<String>> results = new ArrayDeque<>();
+            ArrayDeque<Integer> blanks = new ArrayDeque<>();
+            String section = nextSection();
+            if (section == null) {
+                throw error("no settings line");
+            }
+            for (; section != null; section = nextSection()) {
+                if (results.size() == WINDOW * _threads) {
+                    write(results.remove(), blanks.remove());
+                }
+                String text = section;
+                int line = _sectionLine;
+                results.add(workers.submit(() -> convert(text, line)));
+                blanks.add(_blanks);
+            }
+            while (!results.isEmpty()) {
+                write(results.remove(), blanks.remove());
+            }
+            _output.flush();
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /** Return the conversion of the section TEXT, which starts at input
+     *  line LINE, using this thread's machine. */
+    private String convert(String text, int line) {
+        Machine machine = _machines.get();
+        StringWriter output = new StringWriter(text.length());
+        MessageStream stream =
+            new MessageStream(machine,
+                              (settings) -> _settings.accept(machine,
+                                                             settings),
+                              new StringReader(text), output,
+                              MessageStream.FlushPolicy.BUFFER,
+                              _formatter.copy(),
+                              Math.min(MessageStream.BUFFER_SIZE,
+                                       text.length() + 1));
+        stream.setFirstLine(line);
+        stream.process();
+        return output.toString();
+    }
+
+    /** Write the converted section RESULT, preceded by the blank lines
+     *  held back from the section before it, which are written even if
+     *  RESULT failed, as MessageStream writes them before reading the
+     *  next settings line.  BLANKS is the number of blank lines that
+     *  ended RESULT's section. */
+    private void write(Future<String> result, int blanks)
+        throws IOException {
+        for (; _heldBlanks > 0; _heldBlanks -= 1) {
+            _output.write(NEWLINE);
+        }
+        String text;
+        try {
+            text = result.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                _output.flush();
+                throw (EnigmaException) excp.getCause();
+            }
+            throw new IllegalStateException(excp.getCause());
+        }
+        _output.write(text);
+        _heldBlanks = blanks;
+        if (_flush != MessageStream.FlushPolicy.BUFFER) {
+            _output.flush();
+        }
+    }
+
+    /** Return the next section of the input: a settings line (the first
+     *  line of the input, whatever it contains, or a line whose first
+     *  non-blank character is '*') and the lines after it up to the next
+     *  settings line.  Blank lines at the end of the section are removed
+     *  and counted in _blanks, and the number of its first line is put in
+     *  _sectionLine.  Returns null at the end of the input. */
+    private String nextSection() throws IOException {
+        StringBuilder text = new StringBuilder(_nextSettings);
+        _sectionLine = _nextSettingsLine;
+        _nextSettings = "";
+        if (text.length() == 0) {
+            if (!readLine(text)) {
+                return null;
+            }
+            _sectionLine = _lines;
+        }
+        int end = text.length();
+        _blanks = 0;
+        for (int start = end; readLine(text); start = text.length()) {
+            int first = start;
+            while (first < text.length()
+                   && Character.isWhitespace(text.charAt(first))) {
+                first += 1;
+            }
+            if (first == text.length()) {
+                _blanks += 1;
+            } else if (text.charAt(first) == '*') {
+                _nextSettings = text.substring(start);
+                _nextSettingsLine = _lines;
+                break;
+            } else {
+                end = text.length();
+                _blanks = 0;
+            }
+        }
+        text.setLength(end);
+        return text.toString();
+    }
+
+    /** Append the next input line to TEXT, including its terminator
+     *  ("\n", "\r\n" or "\r").  Returns false if there is no more
+     *  input. */
+    private boolean readLine(StringBuilder text) throws IOException {
+        int start = text.length();
+        while (true) {
+            if (_pos == _limit) {
+                _limit = _input.read(_in, 0, _in.length);
+                _pos = 0;
+                if (_limit <= 0) {
+                    _limit = 0;
+                    if (text.length() == start) {
+                        return false;
+                    }
+                    _lines += 1;
+                    return true;
+                }
+            }
+            char c = _in[_pos];
+            if (_afterCR) {
+                _afterCR = false;
+                if (c == '\n') {
+                    _pos += 1;
+                    text.append(c);
+                }
+                _lines += 1;
+                return true;
+            }
+            _pos += 1;
+            text.append(c);
+            if (c == '\n') {
+                _lines += 1;
+                return true;
+            }
+            _afterCR = c == '\r';
+        }
+    }
+
+    /** Sections in flight per worker thread. */
+    private static final int WINDOW = 4;
+    /** Output line separator. */
+    private static final String NEWLINE = System.lineSeparator();
+
+    /** Each worker thread's machine. */
+    private final ThreadLocal<Machine> _machines;
+    /** Applies a settings line to a machine. */
+    private final BiConsumer<Machine, String> _settings;
+    /** Source of input. */
+    private final Reader _input;
+    /** Destination of output. */
+    private final Writer _output;
+    /** When _output is flushed. */
+    private final MessageStream.FlushPolicy _flush;
+    /** Layout of output lines. */
+    private final GroupFormatter _formatter;
+    /** Number of worker threads. */
+    private final int _threads;
+
+    /** Input buffer. */
+    private final char[] _in = new char[MessageStream.BUFFER_SIZE];
+    /** Index of the next unread character of _in. */
+    private int _pos;
+    /** Number of valid characters in _in. */
+    private int _limit;
+    /** True if the last character read was a carriage return. */
+    private boolean _afterCR;
+    /** Number of input lines read. */
+    private int _lines;
+    /** Settings line that ended the last section read, or "". */
+    private String _nextSettings = "";
+    /** Number of the line _nextSettings. */
+    private int _nextSettingsLine;
+    /** Number of the first line of the last section read. */
+    private int _sectionLine;
+    /** Number of blank lines removed from the end of the last section
+     *  read. */
+    private int _blanks;
+    /** Number of blank lines to write before the next section. */
+    private int _heldBlanks;
+}
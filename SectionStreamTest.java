@@ -0,0 +1,108 @@
+package enigma;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SectionStream class.
+ *  @author James Nho Nguyen
+ */
+public class SectionStreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Apply the settings LINE, of the form "* WXYZ", to MACHINE. */
+    private static void setUp(Machine machine, String line) {
+        String[] words = line.trim().split("\\s+");
+        if (words.length != 2 || !words[0].equals("*")) {
+            throw new EnigmaException("bad settings line");
+        }
+        machine.resetRotors();
+        machine.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        machine.setRotors(words[1]);
+        machine.setPlugboard(new Permutation("(AZ)", UPPER));
+    }
+
+    /** Return the output of processing INPUT one message at a time. */
+    private String sequential(String input) {
+        return sequential(input, new StringWriter());
+    }
+
+    /** Return the output of processing INPUT one message at a time,
+     *  written to OUTPUT a line at a time. */
+    private String sequential(String input, StringWriter output) {
+        Machine machine = navalMachine();
+        new MessageStream(machine, (line) -> setUp(machine, line),
+                          new StringReader(input), output,
+                          MessageStream.FlushPolicy.LINE).process();
+        return output.toString();
+    }
+
+    /** Return the output of processing INPUT with THREADS workers,
+     *  written to OUTPUT. */
+    private String parallel(String input, int threads, StringWriter output) {
+        new SectionStream(TestUtils::navalMachine, SectionStreamTest::setUp,
+                          new StringReader(input), output,
+                          MessageStream.FlushPolicy.BUFFER,
+                          new GroupFormatter(), threads).process();
+        return output.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSameAsSequential() {
+        StringBuilder input = new StringBuilder();
+        for (int k = 0; k < 50; k += 1) {
+            input.append(k % 3 == 0 ? "  * " : "* ")
+                .append(UPPER_STRING.charAt(k % 26))
+                .append(UPPER_STRING.charAt(k * 7 % 26))
+                .append(UPPER_STRING.charAt(k * 3 % 26))
+                .append(UPPER_STRING.charAt(k * 11 % 26))
+                .append(k % 2 == 0 ? "\n" : "\r\n");
+            for (int j = 0; j <= k % 4; j += 1) {
+                input.append(UPPER_STRING, j, 10 + k % 17)
+                    .append(j == 1 ? "\n \t\n\n" : "\n");
+            }
+            input.append(k % 5 == 0 ? "\n\n" : "");
+        }
+        input.append("\n\n");
+        String expected = sequential(input.toString());
+        for (int threads = 1; threads <= 4; threads += 1) {
+            assertEquals(expected,
+                         parallel(input.toString(), threads,
+                                  new StringWriter()));
+        }
+    }
+
+    @Test
+    public void testErrorAfterEarlierSections() {
+        String good = "* ABCD\nHELLO WORLD\n\n";
+        String input = good + good + "* A B\nXYZ\n" + good;
+        StringWriter expected = new StringWriter();
+        try {
+            sequential(input, expected);
+            fail("bad settings line accepted");
+        } catch (EnigmaException excp) {
+            String nl = System.lineSeparator();
+            String one = sequential(good);
+            assertEquals(one + nl + one + nl, expected.toString());
+        }
+        StringWriter output = new StringWriter();
+        try {
+            parallel(input, 2, output);
+            fail("bad settings line accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(expected.toString(), output.toString());
+        }
+    }
+}
@@ -0,0 +1,516 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** Many independent sessions of one kind of machine, converted together
+ *  one character per session at a time.  Each session (a lane) has its
+ *  own rotors, positions and plugboard, chosen from a shared set of
+ *  rotors, and is loaded from a MachineState or set up from a settings
+ *  line; convert(String[], String[]) converts a batch of messages, each
+ *  with its own settings line, in one call.  Lane state is kept in flat
+ *  int arrays indexed by slot and lane (struct-of-arrays), so that a
+ *  kernel can step and convert a run of lanes with vector operations:
+ *  SessionBatch converts them one lane at a time, and VectorKernel
+ *  (compiled separately, see vector/Makefile) with jdk.incubator.vector
+ *  when that module is present.
+ *  @author James Nho Nguyen
+ */
+class SessionBatch {
+
+    /** Converts one character in each of a run of lanes. */
+    interface Kernel {
+        /** Step each lane L of BATCH with 0 <= L < ACTIVE and replace
+         *  COLUMN[OFFSET + L], the index of a character of its alphabet,
+         *  by its conversion. */
+        void convert(SessionBatch batch, int[] column, int offset,
+                     int active);
+
+        /** Return a short name for reports. */
+        String name();
+    }
+
+    /** A batch of CAPACITY lanes for machines like MACHINE: with its
+     *  alphabet, number of slots and pawls, and rotors taken from its
+     *  available rotors.  Lanes are converted by KERNEL.  Settings lines
+     *  are set up with a machine of my own, so MACHINE is not changed. */
+    SessionBatch(Machine machine, int capacity, Kernel kernel) {
+        Alphabet alphabet = machine.alphabet();
+        int numSlots = machine.numRotors();
+        Collection<Rotor> rotors = machine.getRotorMap().values();
+        if (capacity < 1) {
+            throw error("a batch needs at least one lane");
+        }
+        int n = alphabet.size();
+        _machine = new Machine(alphabet, numSlots, machine.numPawls(),
+                               rotors);
+        _images = new LinkedHashMap<String, int[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, int[]> eldest) {
+                return size() > DEFAULT_SETTINGS;
+            }
+        };
+        _alphabet = alphabet;
+        _size = n;
+        _slots = numSlots;
+        _capacity = capacity;
+        _kernel = kernel;
+        _rotorIndex = new IdentityHashMap<>();
+        _forward = new int[rotors.size() * 2 * n];
+        _backward = new int[rotors.size() * 2 * n];
+        _notches = new int[rotors.size() * n];
+        _rotates = new boolean[rotors.size()];
+        for (Rotor rotor : rotors) {
+            if (rotor.size() != n) {
+                throw error("rotor %s has the wrong alphabet", rotor.name());
+            }
+            int i = _rotorIndex.size();
+            _rotorIndex.put(rotor, i);
+            _rotates[i] = rotor.rotates();
+            Permutation perm = rotor.permutation();
+            for (int q = 0; q < 2 * n; q += 1) {
+                _forward[i * 2 * n + q] = perm.permute(q % n);
+                _backward[i * 2 * n + q] = perm.invert(q % n);
+            }
+            for (int posn = 0; posn < n; posn += 1) {
+                _notches[i * n + posn] = rotor.atNotch(posn) ? 1 : 0;
+            }
+        }
+        _pos = new int[numSlots * capacity];
+        _band = new int[numSlots * capacity];
+        _notchBase = new int[numSlots * capacity];
+        _rot = new int[numSlots * capacity];
+        _plugs = new int[capacity * n];
+        _plugBase = new int[capacity];
+        _firstRotating = numSlots;
+        for (int l = 0; l < capacity; l += 1) {
+            _plugBase[l] = l * n;
+        }
+    }
+
+    /** A batch of CAPACITY lanes as above, converted by the fastest
+     *  kernel available. */
+    SessionBatch(Machine machine, int capacity) {
+        this(machine, capacity, kernel());
+    }
+
+    /** Return the fastest kernel available: VectorKernel if the
+     *  jdk.incubator.vector module has been added (java --add-modules
+     *  jdk.incubator.vector) and the class has been compiled, and
+     *  otherwise SCALAR. */
+    static Kernel kernel() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            try {
+                return (Kernel) Class.forName(VECTOR_KERNEL)
+                    .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError excp) {
+                return SCALAR;
+            }
+        }
+        return SCALAR;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of lanes I hold. */
+    int capacity() {
+        return _capacity;
+    }
+
+    /** Return the number of slots of each lane. */
+    int numSlots() {
+        return _slots;
+    }
+
+    /** Return the kernel that converts my lanes. */
+    Kernel kernelUsed() {
+        return _kernel;
+    }
+
+    /** Make lane LANE a copy of STATE, whose rotors must all be among
+     *  mine.  STATE itself is not changed by converting the lane. */
+    void load(int lane, MachineState state) {
+        load(lane, image(state));
+    }
+
+    /** Load lane LANE from IMAGE, as made by image(). */
+    private void load(int lane, int[] image) {
+        for (int r = 0; r < _slots; r += 1) {
+            load(lane, r, image[r], image[_slots + r]);
+        }
+        System.arraycopy(image, 2 * _slots, _plugs, _plugBase[lane], _size);
+    }
+
+    /** Return the numbers of the rotors of STATE, then their positions,
+     *  then the table of its plugboard, in one array. */
+    private int[] image(MachineState state) {
+        MachineSpec spec = state.spec();
+        if (spec.numSlots() != _slots || spec.alphabet().size() != _size) {
+            throw error("state does not fit this batch");
+        }
+        int[] image = new int[2 * _slots + _size];
+        for (int r = 0; r < _slots; r += 1) {
+            Integer i = _rotorIndex.get(spec.slot(r));
+            if (i == null) {
+                throw error("rotor %s is not in this batch",
+                            spec.slot(r).name());
+            }
+            image[r] = i;
+        }
+        System.arraycopy(state.positions(), 0, image, _slots, _slots);
+        Permutation plugboard = state.plugboard();
+        for (int c = 0; c < _size; c += 1) {
+            image[2 * _slots + c] = plugboard.permute(c);
+        }
+        return image;
+    }
+
+    /** Put my rotor number ROTOR at position POSN in slot R of lane
+     *  LANE. */
+    void load(int lane, int r, int rotor, int posn) {
+        int i = r * _capacity + lane;
+        _pos[i] = posn;
+        _band[i] = rotor * 2 * _size;
+        _notchBase[i] = rotor * _size;
+        _rot[i] = _rotates[rotor] ? 1 : 0;
+        if (_rotates[rotor] && r < _firstRotating) {
+            _firstRotating = r;
+        }
+    }
+
+    /** Return a slot number such that the rotors in lower-numbered slots
+     *  of every lane I have held do not rotate.  Since the notches of a
+     *  slot matter only when the slot to its left rotates, stepping may
+     *  start at this slot, with no notch to its left. */
+    int firstRotating() {
+        return _firstRotating;
+    }
+
+    /** Return the forward tables of all rotors. */
+    int[] forwardTables() {
+        return _forward;
+    }
+
+    /** Return the backward tables of all rotors. */
+    int[] backwardTables() {
+        return _backward;
+    }
+
+    /** Return the notch flags of all rotors. */
+    int[] notchFlags() {
+        return _notches;
+    }
+
+    /** Return the position of each slot of each lane. */
+    int[] lanePositions() {
+        return _pos;
+    }
+
+    /** Return the start of the tables of each slot's rotor. */
+    int[] bands() {
+        return _band;
+    }
+
+    /** Return the start of the notch flags of each slot's rotor. */
+    int[] notchBases() {
+        return _notchBase;
+    }
+
+    /** Return the rotation flag of each slot's rotor. */
+    int[] rotating() {
+        return _rot;
+    }
+
+    /** Return the plugboard tables of all lanes. */
+    int[] plugTables() {
+        return _plugs;
+    }
+
+    /** Return the start of each lane's plugboard table. */
+    int[] plugBases() {
+        return _plugBase;
+    }
+
+    /** Return the current positions of the rotors of lane LANE, slot by
+     *  slot. */
+    int[] positions(int lane) {
+        int[] result = new int[_slots];
+        for (int r = 0; r < _slots; r += 1) {
+            result[r] = _pos[r * _capacity + lane];
+        }
+        return result;
+    }
+
+    /** Convert MESSAGES[L] in place with lane L, for each L.  Messages
+     *  may differ in length: lanes are taken in order of decreasing
+     *  length, so that those still converting at any character are a
+     *  run starting at lane 0.  Characters not in my alphabet are treated
+     *  as for MachineState.convert. */
+    void convert(char[][] messages) {
+        int lanes = messages.length;
+        if (lanes > _capacity) {
+            throw error("%d messages for %d lanes", lanes, _capacity);
+        }
+        long[] keys = new long[lanes];
+        for (int l = 0; l < lanes; l += 1) {
+            keys[l] = ((long) (Integer.MAX_VALUE - messages[l].length) << 32)
+                | l;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[lanes];
+        for (int j = 0; j < lanes; j += 1) {
+            order[j] = (int) keys[j];
+        }
+        permute(order);
+        int length = lanes == 0 ? 0 : messages[order[0]].length;
+        int stride = lanes + ROW_PAD;
+        int rows = Math.max(1, BLOCK_SIZE / stride);
+        int[] block = new int[rows * stride];
+        for (int t0 = 0, active = lanes; t0 < length; t0 += rows) {
+            int t1 = Math.min(length, t0 + rows);
+            for (int j = 0; j < active; j += 1) {
+                char[] msg = messages[order[j]];
+                for (int t = t0, end = Math.min(t1, msg.length); t < end;
+                     t += 1) {
+                    int c = _alphabet.toInt(msg[t]);
+                    block[(t - t0) * stride + j] = c < 0 ? _size - 1 : c;
+                }
+            }
+            for (int t = t0; t < t1; t += 1) {
+                while (messages[order[active - 1]].length <= t) {
+                    active -= 1;
+                }
+                _kernel.convert(this, block, (t - t0) * stride, active);
+            }
+            for (int j = 0; j < lanes; j += 1) {
+                char[] msg = messages[order[j]];
+                if (msg.length <= t0) {
+                    break;
+                }
+                for (int t = t0, end = Math.min(t1, msg.length); t < end;
+                     t += 1) {
+                    msg[t] = _alphabet.toChar(block[(t - t0) * stride + j]);
+                }
+            }
+        }
+        int[] inverse = new int[lanes];
+        for (int j = 0; j < lanes; j += 1) {
+            inverse[order[j]] = j;
+        }
+        permute(inverse);
+    }
+
+    /** Return the conversions of MESSAGES[K], for each K, each by a
+     *  fresh machine like mine set up by the settings line SETTINGS[K] as
+     *  Main does.  Each message is converted as by Machine.convert(String),
+     *  and my lanes are reloaded as many times as needed.  The result of
+     *  setting up each of the last DEFAULT_SETTINGS distinct settings
+     *  lines is kept, so a settings line seen recently costs only the
+     *  copying of its rotor numbers, positions and plugboard into a
+     *  lane. */
+    String[] convert(String[] settings, String[] messages) {
+        if (settings.length != messages.length) {
+            throw error("%d settings lines for %d messages",
+                        settings.length, messages.length);
+        }
+        if (!_alphabet.isBmp()) {
+            throw error("alphabet has characters outside the Basic "
+                        + "Multilingual Plane");
+        }
+        String[] result = new String[messages.length];
+        char[][] chars = new char[Math.min(_capacity, messages.length)][];
+        for (int from = 0; from < messages.length; from += _capacity) {
+            int lanes = Math.min(_capacity, messages.length - from);
+            if (lanes < chars.length) {
+                chars = new char[lanes][];
+            }
+            for (int l = 0; l < lanes; l += 1) {
+                load(l, settings[from + l], from + l);
+                chars[l] = messages[from + l].toCharArray();
+            }
+            convert(chars);
+            for (int l = 0; l < lanes; l += 1) {
+                result[from + l] = new String(chars[l]);
+            }
+        }
+        return result;
+    }
+
+    /** Load lane LANE as set up by SETTINGS, the settings line of
+     *  message number K. */
+    private void load(int lane, String settings, int k) {
+        int[] image = _images.get(settings);
+        if (image == null) {
+            try {
+                _machine.resetRotors();
+                Main.setUp(_machine, settings);
+            } catch (EnigmaException excp) {
+                throw error("message %d, %s", k, excp.getMessage());
+            }
+            image = image(_machine.state());
+            _images.put(settings, image);
+            _setups += 1;
+        }
+        load(lane, image);
+    }
+
+    /** Return the number of settings lines I have set up, rather than
+     *  finding them among those recently used. */
+    long setups() {
+        return _setups;
+    }
+
+    /** Rearrange lanes 0 .. ORDER.length-1 so that lane J holds what lane
+     *  ORDER[J] held. */
+    void permute(int[] order) {
+        int lanes = order.length;
+        int[] scratch = new int[lanes];
+        for (int[] a : new int[][] { _pos, _band, _notchBase, _rot }) {
+            for (int r = 0; r < _slots; r += 1) {
+                int row = r * _capacity;
+                for (int j = 0; j < lanes; j += 1) {
+                    scratch[j] = a[row + order[j]];
+                }
+                System.arraycopy(scratch, 0, a, row, lanes);
+            }
+        }
+        for (int j = 0; j < lanes; j += 1) {
+            scratch[j] = _plugBase[order[j]];
+        }
+        System.arraycopy(scratch, 0, _plugBase, 0, lanes);
+    }
+
+    /** Step lanes FROM .. TO-1 and convert their characters one lane at
+     *  a time, lane L's being COLUMN[OFFSET + L], as for Kernel.convert.
+     *  This is SCALAR, and finishes the lanes left over by vector
+     *  kernels. */
+    void convertScalar(int[] column, int offset, int from, int to) {
+        final int n = _size, cap = _capacity, last = _slots - 1;
+        final int first = _firstRotating;
+        final int[] pos = _pos, band = _band, notchBase = _notchBase;
+        final int[] rot = _rot, notches = _notches, plugs = _plugs;
+        final int[] forward = _forward, backward = _backward;
+        for (int l = from; l < to; l += 1) {
+            int here = 0, rotLeft = 0;
+            for (int r = first, i = first * cap + l; r <= last;
+                 r += 1, i += cap) {
+                int rotates = rot[i];
+                int right = r < last
+                    ? notches[notchBase[i + cap] + pos[i + cap]] : 0;
+                int fast = r == last ? 1 : 0;
+                if ((rotates & (fast | (here & rotLeft) | right)) != 0) {
+                    int p = pos[i] + 1;
+                    pos[i] = p == n ? 0 : p;
+                }
+                here = right;
+                rotLeft = rotates;
+            }
+            int c = column[offset + l];
+            if (c < 0 || c >= n) {
+                c = Math.floorMod(c, n);
+            }
+            int plug = _plugBase[l];
+            c = plugs[plug + c];
+            for (int i = last * cap + l; i > l; i -= cap) {
+                int p = pos[i];
+                c = forward[band[i] + c + p] - p;
+                c += (c >> 31) & n;
+            }
+            for (int i = l; i <= last * cap + l; i += cap) {
+                int p = pos[i];
+                c = backward[band[i] + c + p] - p;
+                c += (c >> 31) & n;
+            }
+            column[offset + l] = plugs[plug + c];
+        }
+    }
+
+    /** The kernel that converts lanes one at a time. */
+    static final Kernel SCALAR = new Kernel() {
+        @Override
+        public void convert(SessionBatch batch, int[] column, int offset,
+                            int active) {
+            batch.convertScalar(column, offset, 0, active);
+        }
+
+        @Override
+        public String name() {
+            return "scalar";
+        }
+    };
+
+    /** Number of characters of all lanes converted by convert(char[][])
+     *  between copies to and from the messages. */
+    static final int BLOCK_SIZE = 1 << 16;
+    /** Number of unused ints after each row of such a block, so that
+     *  the entries of one lane in successive rows do not fall in the
+     *  same cache set when the number of lanes is a power of two. */
+    static final int ROW_PAD = 16;
+    /** Module holding the Vector API. */
+    static final String VECTOR_MODULE = "jdk.incubator.vector";
+    /** Class of the kernel that uses the Vector API. */
+    static final String VECTOR_KERNEL = "enigma.VectorKernel";
+
+    /** Number of settings lines whose setups are kept. */
+    static final int DEFAULT_SETTINGS = 4096;
+
+    /** Machine that sets up settings lines. */
+    private final Machine _machine;
+    /** Images (see image()) of the setups of recent settings lines, least
+     *  recently used first. */
+    private final LinkedHashMap<String, int[]> _images;
+    /** Number of settings lines set up. */
+    private long _setups;
+    /** Alphabet of all my lanes. */
+    private final Alphabet _alphabet;
+    /** Number of characters in _alphabet. */
+    private final int _size;
+    /** Number of slots of each lane. */
+    private final int _slots;
+    /** Number of lanes. */
+    private final int _capacity;
+    /** Converts my lanes. */
+    private final Kernel _kernel;
+    /** Number of each of my rotors, in order of registration. */
+    private final IdentityHashMap<Rotor, Integer> _rotorIndex;
+    /** Rotates[I] is true iff rotor number I rotates. */
+    private final boolean[] _rotates;
+    /** See firstRotating(). */
+    private int _firstRotating;
+
+    /* The tables and lane arrays below are handed to kernels in place.
+     * For rotor number I, _forward[2*N*I + Q] and _backward[2*N*I + Q]
+     * are its permutation and inverse applied to Q mod N, where N is the
+     * alphabet size, so that the conversion of C at position P is
+     * TABLE[2*N*I + C + P] - P, plus N if that is negative; and
+     * _notches[N*I + P] is 1 if P is one of its notches, else 0.  The
+     * lane arrays hold entry R * capacity + L for slot R of lane L. */
+
+    /** Forward tables of all rotors, two turns each. */
+    private final int[] _forward;
+    /** Backward tables of all rotors, two turns each. */
+    private final int[] _backward;
+    /** Notch flags of all rotors. */
+    private final int[] _notches;
+    /** Position of each slot of each lane. */
+    private final int[] _pos;
+    /** Start of the forward and backward tables of each slot's rotor. */
+    private final int[] _band;
+    /** Start of the notch flags of each slot's rotor. */
+    private final int[] _notchBase;
+    /** 1 if each slot's rotor rotates, else 0. */
+    private final int[] _rot;
+    /** Plugboard tables of all lanes. */
+    private final int[] _plugs;
+    /** Start of each lane's plugboard table in _plugs. */
+    private final int[] _plugBase;
+}
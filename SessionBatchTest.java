@@ -0,0 +1,192 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SessionBatch class.
+ *  @author James Nho Nguyen
+ */
+public class SessionBatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Return a state of MACH with randomly chosen rotors, positions and
+     *  plugboard, drawn from RANDOM.  MACH has six slots and rotors
+     *  generated by RotorGenerator. */
+    private static MachineState randomState(Machine mach, Random random) {
+        List<String> moving = new ArrayList<>(List.of("M1", "M2", "M3", "M4",
+                                                      "M5", "M6"));
+        Collections.shuffle(moving, random);
+        mach.insertRotors(new String[] {
+            "R" + (1 + random.nextInt(2)), "F" + (1 + random.nextInt(2)),
+            moving.get(0), moving.get(1), moving.get(2), moving.get(3) });
+        Alphabet alphabet = mach.alphabet();
+        RotorGenerator generator =
+            new RotorGenerator(alphabet, random.nextLong());
+        mach.setPlugboard(random.nextBoolean() ? generator.reflection()
+                          : new Permutation("", alphabet));
+        for (int r = 1; r < mach.numRotors(); r += 1) {
+            mach.state().positions()[r] = random.nextInt(alphabet.size());
+        }
+        return mach.state().copy();
+    }
+
+    /** Check that a batch using KERNEL converts LANES random messages of
+     *  up to MAXLENGTH characters over ALPHABET as MachineState does. */
+    private static void checkAgrees(Alphabet alphabet,
+                                    SessionBatch.Kernel kernel, int lanes,
+                                    int maxLength) {
+        Random random = new Random(lanes);
+        Machine mach =
+            new RotorGenerator(alphabet, lanes).machine(6, 4, 2, 2, 6, 5);
+        SessionBatch batch = new SessionBatch(mach, lanes + 3, kernel);
+        MachineState[] states = new MachineState[lanes];
+        char[][] messages = new char[lanes][];
+        for (int l = 0; l < lanes; l += 1) {
+            states[l] = randomState(mach, random);
+            batch.load(l, states[l]);
+            messages[l] = new char[random.nextInt(maxLength + 1)];
+            for (int k = 0; k < messages[l].length; k += 1) {
+                messages[l][k] =
+                    alphabet.toChar(random.nextInt(alphabet.size()));
+            }
+        }
+        char[][] expected = new char[lanes][];
+        for (int l = 0; l < lanes; l += 1) {
+            expected[l] = messages[l].clone();
+            states[l].convert(expected[l], 0, expected[l].length, alphabet);
+        }
+        batch.convert(messages);
+        for (int l = 0; l < lanes; l += 1) {
+            assertArrayEquals(msg("lane " + l, "wrong conversion"),
+                              expected[l], messages[l]);
+            assertArrayEquals(msg("lane " + l, "wrong positions"),
+                              states[l].positions(), batch.positions(l));
+        }
+    }
+
+    @Test
+    public void testScalarAgrees() {
+        checkAgrees(UPPER, SessionBatch.SCALAR, 37, 400);
+        checkAgrees(Alphabet.range(0x4e00, 0x4e00 + 299),
+                    SessionBatch.SCALAR, 21, 2000);
+    }
+
+    @Test
+    public void testBestKernelAgrees() {
+        SessionBatch.Kernel kernel = SessionBatch.kernel();
+        checkAgrees(UPPER, kernel, 37, 400);
+        checkAgrees(UPPER, kernel, 64, 100);
+        checkAgrees(Alphabet.range(0x4e00, 0x4e00 + 299), kernel,
+                    21, 2000);
+    }
+
+    @Test
+    public void testVectorKernelUsed() {
+        if (ModuleLayer.boot().findModule(SessionBatch.VECTOR_MODULE)
+            .isPresent()) {
+            assertTrue(SessionBatch.kernel().name().startsWith("vector"));
+        }
+    }
+
+    @Test
+    public void testContinuesSessions() {
+        Machine mach = new RotorGenerator(UPPER, 5).machine();
+        mach.insertRotors(new String[] { "R1", "F1", "M1", "M2", "M3" });
+        mach.setPlugboard(new Permutation("", UPPER));
+        MachineState state = mach.state().copy();
+        SessionBatch batch = new SessionBatch(mach, 2, SessionBatch.SCALAR);
+        batch.load(0, state);
+        batch.load(1, state);
+        char[][] messages = { "HELLOWORLD".toCharArray(),
+                              "HELLO".toCharArray() };
+        batch.convert(messages);
+        char[] world = "WORLD".toCharArray();
+        batch.convert(new char[][] { new char[0], world });
+        assertEquals(new String(messages[1]),
+                     new String(messages[0], 0, 5));
+        assertEquals(new String(messages[0], 5, 5), new String(world));
+        assertArrayEquals(batch.positions(0), batch.positions(1));
+    }
+
+    /** Return a random settings line for a machine with six slots and
+     *  rotors generated by RotorGenerator, drawn from RANDOM. */
+    private static String randomSettings(Random random) {
+        List<String> moving = new ArrayList<>(List.of("M1", "M2", "M3", "M4",
+                                                      "M5", "M6"));
+        Collections.shuffle(moving, random);
+        StringBuilder line =
+            new StringBuilder("* R1 F" + (1 + random.nextInt(2)));
+        for (int r = 0; r < 4; r += 1) {
+            line.append(' ').append(moving.get(r));
+        }
+        line.append(' ');
+        for (int r = 0; r < 5; r += 1) {
+            line.append((char) ('A' + random.nextInt(26)));
+        }
+        if (random.nextBoolean()) {
+            line.append(" (AQ) (ZX)");
+        }
+        return line.toString();
+    }
+
+    @Test
+    public void testSettingsBatch() {
+        Random random = new Random(23);
+        Machine mach = new RotorGenerator(UPPER, 23).machine(6, 4, 1, 2,
+                                                             6, 3);
+        String[] lines = new String[8];
+        for (int k = 0; k < lines.length; k += 1) {
+            lines[k] = randomSettings(random);
+        }
+        String[] settings = new String[50];
+        String[] messages = new String[settings.length];
+        for (int k = 0; k < settings.length; k += 1) {
+            settings[k] = lines[random.nextInt(lines.length)];
+            StringBuilder message = new StringBuilder();
+            for (int j = random.nextInt(300); j > 0; j -= 1) {
+                message.append((char) ('A' + random.nextInt(26)));
+            }
+            messages[k] = message.toString();
+        }
+        SessionBatch batch = new SessionBatch(mach, 16);
+        String[] result = batch.convert(settings, messages);
+        for (int k = 0; k < settings.length; k += 1) {
+            Main.setUp(mach, settings[k]);
+            assertEquals(msg("message " + k, "wrong conversion"),
+                         mach.convert(messages[k]), result[k]);
+        }
+        assertEquals(new HashSet<>(List.of(settings)).size(),
+                     batch.setups());
+        assertArrayEquals(result, batch.convert(settings, messages));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadSettings() {
+        Machine mach = new RotorGenerator(UPPER, 5).machine();
+        new SessionBatch(mach, 4).convert(
+            new String[] { "* R1 F1 M1 M2 M3 AAAA", "* R1 F1 M1 M2 X9 AAAA" },
+            new String[] { "HELLO", "WORLD" });
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testForeignRotor() {
+        Machine mach = new RotorGenerator(UPPER, 5).machine();
+        Machine other = new RotorGenerator(UPPER, 6).machine();
+        other.insertRotors(new String[] { "R1", "F1", "M1", "M2", "M3" });
+        other.setPlugboard(new Permutation("", UPPER));
+        new SessionBatch(mach, 1).load(0, other.state());
+    }
+}
@@ -0,0 +1,179 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** A TCP server on the loopback interface giving each connection a
+ *  session of its own.  A client sends input in the format read by Main,
+ *  starting with a settings line, and reads back each converted message
+ *  line as soon as it is converted, laid out as Main lays it out.
+ *  Settings lines are applied as by Main, through a settings cache
+ *  shared by all sessions; a session owns only a machine over the shared
+ *  rotors.  An error ends the session with the line Main would print,
+ *  or with an "Error: internal error" line for an unexpected one.
+ *  Each session runs in a thread of its own: a virtual thread where the
+ *  Java runtime provides them, otherwise a platform thread with a small
+ *  stack.  Sessions block on writes while their client is not reading,
+ *  and so stop reading its input, so a slow client is held back by TCP
+ *  flow control rather than by output buffered in the server, which
+ *  holds at most SESSION_BUFFER characters per session each way.
+ *  @author James Nho Nguyen
+ */
+class SessionServer {
+
+    /** A server listening on loopback port PORT (any free port if 0) for
+     *  sessions with machines like MACHINE.  Up to CACHESIZE settings
+     *  lines are cached, their states specialized by SPECIALIZER unless
+     *  it is null. */
+    SessionServer(Machine machine, int port, int cacheSize,
+                  Specializer specializer) {
+        if (!machine.alphabet().isBmp()) {
+            throw error("messages need an alphabet of 16-bit characters");
+        }
+        _machine = machine;
+        _cache = new SettingsCache(cacheSize);
+        _specializer = specializer;
+        try {
+            _server = new ServerSocket(port, BACKLOG,
+                                       InetAddress.getLoopbackAddress());
+        } catch (IOException excp) {
+            throw error("could not listen on port %d: %s", port,
+                        excp.getMessage());
+        }
+        _sessions = sessionThreads();
+    }
+
+    /** Return the port I listen on. */
+    int port() {
+        return _server.getLocalPort();
+    }
+
+    /** Accept connections and start their sessions until close() is
+     *  called. */
+    void serve() {
+        try {
+            while (true) {
+                Socket client = _server.accept();
+                _connections.incrementAndGet();
+                _sessions.execute(() -> session(client));
+            }
+        } catch (SocketException excp) {
+            if (!_server.isClosed()) {
+                throw error("I/O error: %s", excp.getMessage());
+            }
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        } finally {
+            _sessions.shutdown();
+        }
+    }
+
+    /** Stop accepting connections.  Sessions already started go on until
+     *  their clients close them. */
+    void close() {
+        try {
+            _server.close();
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Return the number of connections accepted. */
+    long connections() {
+        return _connections.get();
+    }
+
+    /** Return the cache of states shared by my sessions. */
+    SettingsCache cache() {
+        return _cache;
+    }
+
+    /** Convert the input of CLIENT, writing the result back to it, until
+     *  it closes its end or sends something Main would reject. */
+    private void session(Socket client) {
+        try (client) {
+            client.setTcpNoDelay(true);
+            Machine machine = new Machine(_machine.alphabet(),
+                                          _machine.numRotors(),
+                                          _machine.numPawls(),
+                                          _machine.getRotorMap().values());
+            Reader input = new InputStreamReader(client.getInputStream(),
+                                                 StandardCharsets.UTF_8);
+            Writer output = new BufferedWriter(
+                new OutputStreamWriter(client.getOutputStream(),
+                                       StandardCharsets.UTF_8),
+                SESSION_BUFFER);
+            try {
+                new MessageStream(machine,
+                    (line) -> Main.applySettings(machine, line, _cache,
+                                                 _specializer),
+                    input, output, MessageStream.FlushPolicy.LINE,
+                    new GroupFormatter(), SESSION_BUFFER).process();
+            } catch (EnigmaException excp) {
+                output.write(String.format("Error: %s%n",
+                                           excp.getMessage()));
+                output.flush();
+            } catch (RuntimeException excp) {
+                output.write(String.format("Error: internal error: %s%n",
+                                           excp));
+                output.flush();
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Return an executor running each task in a new virtual thread if
+     *  the Java runtime has them (Java 21 and later), and otherwise in a
+     *  new daemon platform thread with a stack of PLATFORM_STACK
+     *  bytes. */
+    static ExecutorService sessionThreads() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool((task) -> {
+                Thread thread = new Thread(null, task, "session",
+                                           PLATFORM_STACK);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Size of each session's input, message and output buffers, in
+     *  characters. */
+    static final int SESSION_BUFFER = 1 << 10;
+    /** Stack size of session threads where there are no virtual
+     *  threads. */
+    static final long PLATFORM_STACK = 1 << 18;
+    /** Number of connections that may wait to be accepted. */
+    private static final int BACKLOG = 4096;
+
+    /** Machine whose alphabet, slots and rotors sessions use. */
+    private final Machine _machine;
+    /** States of recently used settings lines. */
+    private final SettingsCache _cache;
+    /** Specializes newly set up states, or null. */
+    private final Specializer _specializer;
+    /** Socket on which connections are accepted. */
+    private final ServerSocket _server;
+    /** Runs sessions. */
+    private final ExecutorService _sessions;
+    /** Number of connections accepted. */
+    private final AtomicLong _connections = new AtomicLong();
+}
@@ -0,0 +1,146 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SessionServer and LoadGenerator
+ *  classes.
+ *  @author James Nho Nguyen
+ */
+public class SessionServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Settings line of the sessions. */
+    private static final String SETTINGS = "* R1 F1 M1 M2 M3 AXLE (AB) (CD)";
+
+    /** Start a server on a free port. */
+    @Before
+    public void setUp() {
+        _machine = new RotorGenerator(UPPER, 25).machine(5, 3, 2, 2, 6, 1);
+        _server = new SessionServer(_machine, 0, 16, null);
+        _thread = new Thread(_server::serve);
+        _thread.start();
+    }
+
+    /** Stop the server. */
+    @After
+    public void tearDown() throws InterruptedException {
+        _server.close();
+        _thread.join();
+    }
+
+    /** Return the lines Main would write for INPUT with my machine. */
+    private String[] expected(String input) {
+        Machine mach = _machine;
+        StringWriter output = new StringWriter();
+        SettingsCache cache = new SettingsCache(0);
+        new MessageStream(mach,
+            (line) -> Main.applySettings(mach, line, cache, null),
+            new StringReader(input), output,
+            MessageStream.FlushPolicy.BUFFER).process();
+        return output.toString().split(System.lineSeparator());
+    }
+
+    /** Send the lines of INPUT on a new connection one at a time, reading
+     *  a reply line after each message line, and return the replies. */
+    private List<String> session(String input) throws IOException {
+        List<String> replies = new ArrayList<>();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                        _server.port())) {
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                socket.getInputStream(), StandardCharsets.UTF_8));
+            for (String line : input.split("\n")) {
+                out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                if (!line.startsWith("*")) {
+                    replies.add(in.readLine());
+                }
+            }
+            socket.shutdownOutput();
+            assertNull(in.readLine());
+        }
+        return replies;
+    }
+
+    @Test
+    public void testSession() throws IOException {
+        String input = SETTINGS + "\nHELLO WORLD\nTHE END\n"
+            + "* R2 F2 M4 M5 M6 QQQQ\nAGAIN\n";
+        assertEquals(List.of(expected(input)), session(input));
+        assertEquals(List.of(expected(input)), session(input));
+        assertEquals(2, _server.connections());
+        assertEquals(2, _server.cache().misses());
+    }
+
+    @Test
+    public void testError() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                        _server.port())) {
+            socket.getOutputStream().write(
+                "* R1 F1 M1 M2 X9 AAAA\nHELLO\n"
+                .getBytes(StandardCharsets.UTF_8));
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                socket.getInputStream(), StandardCharsets.UTF_8));
+            assertTrue(in.readLine().startsWith("Error: line 1,"));
+            assertNull(in.readLine());
+        }
+    }
+
+    @Test
+    public void testLoad() {
+        LoadGenerator load =
+            new LoadGenerator(_server.port(), 50, 10, SETTINGS,
+                              LoadGenerator.DEFAULT_MESSAGE);
+        load.run();
+        assertEquals(0, load.failures());
+        assertEquals(500, load.completed());
+        assertTrue(load.percentile(50) <= load.percentile(99));
+        assertTrue(load.report().startsWith("connections: 50 (0 failed)"));
+    }
+
+    @Test
+    public void testLoadAllFailed() {
+        LoadGenerator load =
+            new LoadGenerator(_server.port(), 3, 2, "* R1 F1 M1 M2 X9 AAAA",
+                              LoadGenerator.DEFAULT_MESSAGE);
+        load.run();
+        assertEquals(3, load.failures());
+        assertEquals(0, load.completed());
+        assertTrue(load.report(),
+                   load.report().contains("messages: 0 in 0.000 s"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testLoadBlankMessage() {
+        new LoadGenerator(_server.port(), 1, 1, SETTINGS, "  ");
+    }
+
+    /** Machine whose rotors the sessions use. */
+    private Machine _machine;
+    /** Server under test. */
+    private SessionServer _server;
+    /** Thread running _server. */
+    private Thread _thread;
+}
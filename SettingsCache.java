@@ -0,0 +1,107 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded cache of configured machine states, keyed by settings line.
+ *  Lines that differ only in the amount of whitespace between words are
+ *  the same key.  When full, the least recently used entry is discarded.
+ *  Cached states share their MachineSpec, which is immutable; each get()
+ *  returns a fresh copy of the cached positions.  All methods may be
+ *  called from several threads.
+ *  @author James Nho Nguyen
+ */
+class SettingsCache {
+
+    /** A cache holding at most CAPACITY states.  A CAPACITY of 0 caches
+     *  nothing. */
+    SettingsCache(int capacity) {
+        _capacity = capacity;
+        _entries = new LinkedHashMap<String, MachineState>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, MachineState> eldest) {
+                if (size() > _capacity) {
+                    _evictions += 1;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /** Return a copy of the state cached for SETTINGS, or null if there is
+     *  none. */
+    synchronized MachineState get(String settings) {
+        MachineState state = _entries.get(key(settings));
+        if (state == null) {
+            _misses += 1;
+            return null;
+        }
+        _hits += 1;
+        return state.copy();
+    }
+
+    /** Cache a copy of STATE, the state that SETTINGS sets up. */
+    synchronized void put(String settings, MachineState state) {
+        if (_capacity > 0) {
+            _entries.put(key(settings), state.copy());
+        }
+    }
+
+    /** Return SETTINGS with leading and trailing whitespace removed and
+     *  each run of whitespace inside it replaced by one space. */
+    static String key(String settings) {
+        StringBuilder key = new StringBuilder(settings.length());
+        boolean space = false;
+        for (int k = 0; k < settings.length(); k += 1) {
+            char c = settings.charAt(k);
+            if (Character.isWhitespace(c)) {
+                space = key.length() > 0;
+            } else {
+                if (space) {
+                    key.append(' ');
+                    space = false;
+                }
+                key.append(c);
+            }
+        }
+        return key.toString();
+    }
+
+    /** Return the largest number of states I hold. */
+    int capacity() {
+        return _capacity;
+    }
+
+    /** Return the number of states I hold. */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /** Return the number of calls to get() that found a state. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of calls to get() that found none. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Return the number of states discarded to make room for others. */
+    synchronized long evictions() {
+        return _evictions;
+    }
+
+    /** Largest number of entries. */
+    private final int _capacity;
+    /** Cached states, least recently used first. */
+    private final LinkedHashMap<String, MachineState> _entries;
+    /** Number of successful lookups. */
+    private long _hits;
+    /** Number of failed lookups. */
+    private long _misses;
+    /** Number of entries discarded. */
+    private long _evictions;
+}
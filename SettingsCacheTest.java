@@ -0,0 +1,68 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SettingsCache class.
+ *  @author James Nho Nguyen
+ */
+public class SettingsCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** A spec with reflector B and naval rotor I. */
+    private static final MachineSpec SPEC = new MachineSpec(UPPER,
+        new Rotor[] {
+            new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)),
+            new MovingRotor("I", new Permutation(NAVALA.get("I"), UPPER),
+                            "Q"),
+        }, new Permutation("", UPPER));
+
+    @Test
+    public void testKey() {
+        assertEquals("* B I A (AB) (CD)",
+                     SettingsCache.key("  *  B\tI A (AB)   (CD) \r"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        SettingsCache cache = new SettingsCache(2);
+        cache.put("* B I A", SPEC.newState("A"));
+        cache.put("* B I B", SPEC.newState("B"));
+        assertNotNull(cache.get("*  B I A"));
+        cache.put("* B I C", SPEC.newState("C"));
+        assertNull(cache.get("* B I B"));
+        assertEquals(2, cache.get("* B I C").positions()[1]);
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.evictions());
+    }
+
+    @Test
+    public void testCopiesAreIndependent() {
+        SettingsCache cache = new SettingsCache(4);
+        MachineState state = SPEC.newState("Q");
+        cache.put("* B I Q", state);
+        state.step();
+        MachineState first = cache.get("* B I Q");
+        first.step();
+        first.step();
+        assertEquals(16, cache.get("* B I Q").positions()[1]);
+        assertSame(SPEC, first.spec());
+    }
+
+    @Test
+    public void testZeroCapacity() {
+        SettingsCache cache = new SettingsCache(0);
+        cache.put("* B I A", SPEC.newState("A"));
+        assertNull(cache.get("* B I A"));
+        assertEquals(0, cache.size());
+    }
+}
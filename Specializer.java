@@ -0,0 +1,649 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import static enigma.EnigmaException.*;
+
+/** Generates, for each machine configuration, a subclass of MachineState
+ *  specialized to it.  The generated class has the alphabet size, rotor
+ *  count, notch positions and tables of its spec as constants: stepping
+ *  is unrolled slot by slot, notches are tested against literal
+ *  positions, an identity plugboard is left out, and the fast rotor is
+ *  converted without any calls.  The source is compiled in memory with
+ *  the system Java compiler and defined as a hidden class holding its
+ *  tables as class data in static final fields, so that the JIT may fold
+ *  the references to the tables (though not their elements) into the
+ *  compiled code, and the class can be unloaded once no state uses it.
+ *
+ *  Compiling takes far longer than converting a short message, so this is
+ *  worthwhile only when a configuration converts millions of characters.
+ *  A class is compiled by the first thread to ask for it, outside any
+ *  lock; other threads asking for the same class wait for it, and those
+ *  asking for other classes are not held up.
+ *  Every generated class is checked against the generic MachineState on
+ *  random inputs before it is used.
+ *  @author James Nho Nguyen
+ */
+class Specializer {
+
+    /** A specializer keeping at most MAXCLASSES generated classes. */
+    Specializer(int maxClasses) {
+        _classes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<List<Object>, FutureTask<MethodHandle>>
+                        eldest) {
+                return size() > maxClasses;
+            }
+        };
+    }
+
+    /** A specializer keeping DEFAULT_CLASSES generated classes. */
+    Specializer() {
+        this(DEFAULT_CLASSES);
+    }
+
+    /** Return true iff a Java compiler is available, so that specialize()
+     *  can generate classes. */
+    static boolean available() {
+        return ToolProvider.getSystemJavaCompiler() != null;
+    }
+
+    /** Return a state equivalent to STATE, over the same spec and at the
+     *  same positions, whose class is specialized to its spec.  Returns
+     *  STATE itself if its spec has no plugboard or fewer than two
+     *  slots. */
+    MachineState specialize(MachineState state) {
+        MachineSpec spec = state.spec();
+        if (spec.plugboard() == null || spec.numSlots() < 2) {
+            return state;
+        }
+        try {
+            return (MachineState) constructor(spec)
+                .invoke(spec, state.positions().clone());
+        } catch (EnigmaException excp) {
+            throw excp;
+        } catch (Throwable excp) {
+            throw error("could not specialize machine: %s", excp);
+        }
+    }
+
+    /** Return the number of classes generated so far. */
+    synchronized int generated() {
+        return _generated;
+    }
+
+    /** Return a handle on the constructor, taking a MachineSpec and an
+     *  int[] of positions, of the class specialized to SPEC, generating
+     *  and checking the class if there is none yet.  Only the lookup in
+     *  _classes holds my lock. */
+    private MethodHandle constructor(MachineSpec spec)
+        throws InterruptedException {
+        List<Object> key = new ArrayList<>();
+        key.add(spec.alphabet());
+        for (int r = 0; r < spec.numSlots(); r += 1) {
+            key.add(spec.slot(r));
+        }
+        key.add(Arrays.toString(spec.plugboard().table()));
+        FutureTask<MethodHandle> task;
+        boolean mine = false;
+        synchronized (this) {
+            task = _classes.get(key);
+            if (task == null) {
+                task = new FutureTask<>(() -> generate(spec));
+                _classes.put(key, task);
+                mine = true;
+            }
+        }
+        if (mine) {
+            task.run();
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException excp) {
+            synchronized (this) {
+                _classes.remove(key, task);
+            }
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("could not specialize machine: %s", excp.getCause());
+        }
+    }
+
+    /** Return a handle on the constructor of a new class specialized to
+     *  SPEC, having checked it. */
+    private MethodHandle generate(MachineSpec spec) throws Exception {
+        Generator gen = new Generator(spec);
+        MethodHandles.Lookup hidden = MethodHandles.lookup()
+            .defineHiddenClassWithClassData(compile(gen.source()),
+                                            gen.data(), true);
+        MethodHandle result =
+            hidden.findConstructor(hidden.lookupClass(),
+                MethodType.methodType(void.class, MachineSpec.class,
+                                      int[].class));
+        try {
+            verify(spec, result);
+        } catch (Exception | Error excp) {
+            throw excp;
+        } catch (Throwable excp) {
+            throw error("could not check specialized machine: %s", excp);
+        }
+        synchronized (this) {
+            _generated += 1;
+        }
+        return result;
+    }
+
+    /** Check that states made by CONSTRUCTOR convert exactly as generic
+     *  states over SPEC do, from VERIFY_TRIALS random positions, each for
+     *  long enough that every slow rotor may move. */
+    private static void verify(MachineSpec spec, MethodHandle constructor)
+        throws Throwable {
+        Alphabet alphabet = spec.alphabet();
+        int n = alphabet.size();
+        Random random = new Random(VERIFY_SEED);
+        for (int trial = 0; trial < VERIFY_TRIALS; trial += 1) {
+            int[] positions = new int[spec.numSlots()];
+            for (int r = 0; r < positions.length; r += 1) {
+                positions[r] =
+                    spec.slot(r).reflecting() ? 0 : random.nextInt(n);
+            }
+            MachineState generic =
+                new MachineState(spec, positions.clone());
+            MachineState special =
+                (MachineState) constructor.invoke(spec, positions.clone());
+            int length = 2 * n + VERIFY_EXTRA;
+            if (alphabet.isBmp() && trial % 2 == 0) {
+                char[] expected = new char[length];
+                for (int k = 0; k < length; k += 1) {
+                    expected[k] = alphabet.toChar(random.nextInt(n));
+                }
+                char[] actual = expected.clone();
+                generic.convert(expected, 0, length, alphabet);
+                special.convert(actual, 0, length, alphabet);
+                check(Arrays.equals(expected, actual));
+            } else {
+                for (int k = 0; k < length; k += 1) {
+                    int c = random.nextInt(n);
+                    check(generic.convert(c) == special.convert(c));
+                }
+            }
+            check(Arrays.equals(generic.positions(), special.positions()));
+        }
+    }
+
+    /** Fail if OK is false. */
+    private static void check(boolean ok) {
+        if (!ok) {
+            throw error("specialized machine disagrees with generic "
+                        + "machine");
+        }
+    }
+
+    /** Return the class file compiled from SOURCE, which defines the
+     *  class enigma.CLASS_NAME. */
+    private static byte[] compile(String source) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw error("specialization needs a Java compiler");
+        }
+        ClassOutput output = new ClassOutput(
+            compiler.getStandardFileManager(null, null, null));
+        StringWriter messages = new StringWriter();
+        boolean ok = compiler.getTask(messages, output, null,
+            List.of("-classpath", System.getProperty("java.class.path"),
+                    "-g:none", "-proc:none"),
+            null, List.of(new Source(source))).call();
+        if (!ok) {
+            throw error("could not compile specialized machine: %s",
+                        messages);
+        }
+        return output.bytes();
+    }
+
+    /** Java source held in memory. */
+    private static class Source extends SimpleJavaFileObject {
+        /** The source TEXT of class enigma.CLASS_NAME. */
+        Source(String text) {
+            super(URI.create("string:///enigma/" + CLASS_NAME + ".java"),
+                  Kind.SOURCE);
+            _text = text;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return _text;
+        }
+
+        /** The source. */
+        private final String _text;
+    }
+
+    /** A file manager that collects the one class file written through it
+     *  in memory. */
+    private static class ClassOutput
+        extends ForwardingJavaFileManager<JavaFileManager> {
+        /** A manager reading through FILES. */
+        ClassOutput(JavaFileManager files) {
+            super(files);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location,
+                String className, JavaFileObject.Kind kind,
+                FileObject sibling) {
+            return new SimpleJavaFileObject(
+                URI.create("mem:///" + className + kind.extension), kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    return _bytes;
+                }
+            };
+        }
+
+        /** Return the class file written. */
+        byte[] bytes() {
+            return _bytes.toByteArray();
+        }
+
+        /** The class file written. */
+        private final ByteArrayOutputStream _bytes =
+            new ByteArrayOutputStream();
+    }
+
+    /** Writes the source of the class specialized to one spec, and
+     *  collects the constants it reads from its class data. */
+    private static class Generator {
+
+        /** A generator for SPEC. */
+        Generator(MachineSpec spec) {
+            _spec = spec;
+            _alphabet = spec.alphabet();
+            _n = _alphabet.size();
+            _last = spec.numSlots() - 1;
+        }
+
+        /** Return the class data: the constants named in source(). */
+        Object[] data() {
+            return _data.toArray();
+        }
+
+        /** Return the source of the specialized class. */
+        String source() {
+            StringBuilder consts = new StringBuilder();
+            Odometer odometer = _spec.odometer();
+            for (int r = 0; r < _last; r += 1) {
+                constant(consts, "Rotor", "S" + r, _spec.slot(r));
+            }
+            String stepping = stepping(consts, odometer);
+            String conversion = conversion(consts);
+            String indexing = indexing(consts);
+
+            StringBuilder src = new StringBuilder();
+            src.append("package enigma;\n\n")
+                .append("import java.lang.invoke.MethodHandles;\n\n")
+                .append("final class ").append(CLASS_NAME)
+                .append(" extends MachineState {\n")
+                .append("    private static final Object[] DATA = data();\n")
+                .append("    private static Object[] data() {\n")
+                .append("        try {\n")
+                .append("            return MethodHandles.classData(")
+                .append("MethodHandles.lookup(), \"_\", Object[].class);\n")
+                .append("        } catch (IllegalAccessException e) {\n")
+                .append("            throw new IllegalStateException(e);\n")
+                .append("        }\n    }\n")
+                .append("    static final int N = ").append(_n)
+                .append(";\n").append(consts)
+                .append("    private final int[] _pos;\n")
+                .append("    private final int[] _comp = new int[N];\n");
+            for (int r = 0; r < _last; r += 1) {
+                src.append("    private int _k").append(r)
+                    .append(" = -1;\n");
+            }
+            src.append("    private long _chars, _rebuilds;\n\n")
+                .append("    ").append(CLASS_NAME)
+                .append("(MachineSpec spec, int[] positions) {\n")
+                .append("        super(spec, positions);\n")
+                .append("        _pos = positions;\n    }\n\n")
+                .append("    @Override\n    MachineState copy() {\n")
+                .append("        return new ").append(CLASS_NAME)
+                .append("(spec(), _pos.clone());\n    }\n\n")
+                .append("    @Override\n    long compositeHits() {\n")
+                .append("        return _chars - _rebuilds;\n    }\n\n")
+                .append("    @Override\n    long compositeRebuilds() {\n")
+                .append("        return _rebuilds;\n    }\n\n");
+
+            String body = stepping + conversion;
+            src.append("    @Override\n    int convert(int c) {\n")
+                .append(loadPositions())
+                .append(body).append(storePositions())
+                .append("        _chars += 1;\n        return c;\n    }\n\n");
+            if (indexing != null) {
+                src.append("    @Override\n    void convert(char[] chars, ")
+                    .append("int from, int to, Alphabet alphabet) {\n")
+                    .append("        if (alphabet != ALPHA) {\n")
+                    .append("            super.convert(chars, from, to, ")
+                    .append("alphabet);\n            return;\n        }\n")
+                    .append(loadPositions())
+                    .append("        for (int k = from; k < to; k += 1) {\n")
+                    .append(indexing).append(body)
+                    .append("        chars[k] = CHARS[c];\n        }\n")
+                    .append(storePositions())
+                    .append("        _chars += to - from;\n    }\n\n");
+            }
+            if (_alphabet.isBytes()) {
+                src.append("    @Override\n    void convert(byte[] bytes, ")
+                    .append("int from, int to) {\n")
+                    .append(loadPositions())
+                    .append("        for (int k = from; k < to; k += 1) {\n")
+                    .append("        int c = bytes[k] & 0xff;\n")
+                    .append(body)
+                    .append("        bytes[k] = (byte) c;\n        }\n")
+                    .append(storePositions())
+                    .append("        _chars += to - from;\n    }\n\n");
+            }
+            src.append(rebuild()).append("}\n");
+            return src.toString();
+        }
+
+        /** Add VALUE to the class data and declare it in CONSTS as a
+         *  constant NAME of TYPE. */
+        private void constant(StringBuilder consts, String type,
+                              String name, Object value) {
+            consts.append("    static final ").append(type).append(' ')
+                .append(name).append(" = (").append(type).append(") DATA[")
+                .append(_data.size()).append("];\n");
+            _data.add(value);
+        }
+
+        /** Return the statements loading each slot's position into a
+         *  local p<slot> and the composite table into comp. */
+        private String loadPositions() {
+            StringBuilder result =
+                new StringBuilder("        int[] pos = _pos;\n");
+            for (int r = 0; r <= _last; r += 1) {
+                result.append("        int p").append(r)
+                    .append(" = pos[").append(r).append("];\n");
+            }
+            return result.append("        int[] comp = _comp;\n").toString();
+        }
+
+        /** Return the statements storing the positions of the slots that
+         *  may move back into pos. */
+        private String storePositions() {
+            StringBuilder result = new StringBuilder();
+            for (int r = 0; r <= _last; r += 1) {
+                if (_spec.odometer().rotates(r)) {
+                    result.append("        pos[").append(r).append("] = p")
+                        .append(r).append(";\n");
+                }
+            }
+            return result.toString();
+        }
+
+        /** Return the statements advancing the positions p<slot> by one
+         *  character according to ODOMETER, unrolled, with any notch
+         *  tables needed declared in CONSTS.  As in Odometer.step(),
+         *  each slot's test reads only its own and its right neighbor's
+         *  positions, which have not yet moved. */
+        private String stepping(StringBuilder consts, Odometer odometer) {
+            StringBuilder result = new StringBuilder();
+            for (int r = 0; r <= _last; r += 1) {
+                if (!odometer.rotates(r)) {
+                    continue;
+                }
+                String advance = "p" + r + " = p" + r + " == N - 1 ? 0 : p"
+                    + r + " + 1;";
+                if (r == _last) {
+                    result.append("        ").append(advance).append('\n');
+                    continue;
+                }
+                List<String> tests = new ArrayList<>();
+                String here = r > 0 && odometer.rotates(r - 1)
+                    ? notchTest(consts, odometer, r) : null;
+                String right = notchTest(consts, odometer, r + 1);
+                if (here != null) {
+                    tests.add(here);
+                }
+                if (right != null) {
+                    tests.add(right);
+                }
+                if (!tests.isEmpty()) {
+                    result.append("        if (")
+                        .append(String.join(" || ", tests)).append(") {\n")
+                        .append("            ").append(advance)
+                        .append("\n        }\n");
+                }
+            }
+            return result.toString();
+        }
+
+        /** Return an expression that is true iff the position p<R> is a
+         *  notch of slot R, or null if it has none.  A few notches are
+         *  compared directly; more are looked up in a table declared in
+         *  CONSTS. */
+        private String notchTest(StringBuilder consts, Odometer odometer,
+                                 int r) {
+            if (_notchTests.containsKey(r)) {
+                return _notchTests.get(r);
+            }
+            String result = null;
+            List<String> tests = new ArrayList<>();
+            boolean[] notches = new boolean[_n];
+            for (int posn = 0; posn < _n; posn += 1) {
+                if (odometer.atNotch(r, posn)) {
+                    notches[posn] = true;
+                    tests.add("p" + r + " == " + posn);
+                }
+            }
+            if (tests.size() > MAX_NOTCH_TESTS) {
+                constant(consts, "boolean[]", "NOTCH" + r, notches);
+                result = "NOTCH" + r + "[p" + r + "]";
+            } else if (!tests.isEmpty()) {
+                result = "(" + String.join(" || ", tests) + ")";
+            }
+            _notchTests.put(r, result);
+            return result;
+        }
+
+        /** Return the statements converting the index c (after stepping),
+         *  with the plugboard and fast rotor tables declared in CONSTS. */
+        private String conversion(StringBuilder consts) {
+            Rotor fast = _spec.slot(_last);
+            String p = "p" + _last;
+            String forward, backward;
+            int[] fwd, bwd;
+            switch (fast.layout()) {
+            case DENSE:
+                fwd = new int[_n * _n];
+                bwd = new int[_n * _n];
+                for (int posn = 0; posn < _n; posn += 1) {
+                    int[] row = identity();
+                    fast.convertForward(row, posn);
+                    System.arraycopy(row, 0, fwd, posn * _n, _n);
+                    row = identity();
+                    fast.convertBackward(row, posn);
+                    System.arraycopy(row, 0, bwd, posn * _n, _n);
+                }
+                forward = "        c = FF[row + c];\n";
+                backward = "        c = FB[row + c];\n";
+                break;
+            case BANDED:
+                fwd = new int[2 * _n];
+                bwd = new int[2 * _n];
+                for (int q = 0; q < 2 * _n; q += 1) {
+                    fwd[q] = fast.permutation().permute(q % _n);
+                    bwd[q] = fast.permutation().invert(q % _n);
+                }
+                forward = "        c = FF[c + " + p + "] - " + p + ";\n"
+                    + "        c += (c >> 31) & N;\n";
+                backward = forward.replace("FF", "FB");
+                break;
+            default:
+                fwd = fast.permutation().table();
+                bwd = fast.permutation().inverse().table();
+                forward = "        c += " + p + ";\n"
+                    + "        c = FF[c >= N ? c - N : c] - " + p + ";\n"
+                    + "        c += (c >> 31) & N;\n";
+                backward = forward.replace("FF", "FB");
+                break;
+            }
+            constant(consts, "int[]", "FF", fwd);
+            constant(consts, "int[]", "FB", bwd);
+            StringBuilder result = new StringBuilder();
+            result.append("        if (c < 0 || c >= N) {\n")
+                .append("            c = Math.floorMod(c, N);\n")
+                .append("        }\n");
+            if (fast.layout() == Rotor.Layout.DENSE) {
+                result.append("        int row = ").append(p)
+                    .append(" * N;\n");
+            }
+            String plug = "";
+            if (!Arrays.equals(_spec.plugboard().table(), identity())) {
+                constant(consts, "int[]", "PLUG", _spec.plugboard().table());
+                plug = "        c = PLUG[c];\n";
+            }
+            result.append(plug).append(forward);
+            List<String> stale = new ArrayList<>(), args = new ArrayList<>();
+            for (int r = 0; r < _last; r += 1) {
+                stale.add("p" + r + " != _k" + r);
+                args.add("p" + r);
+            }
+            result.append("        if (").append(String.join(" | ", stale))
+                .append(") {\n            rebuild(")
+                .append(String.join(", ", args)).append(");\n        }\n")
+                .append("        c = comp[c];\n")
+                .append(backward).append(plug);
+            return result.toString();
+        }
+
+        /** Return the statements that map chars[k] to its index c, with
+         *  the tables they use declared in CONSTS, or null if the
+         *  alphabet has characters that are not single chars. */
+        private String indexing(StringBuilder consts) {
+            if (!_alphabet.isBmp()) {
+                return null;
+            }
+            constant(consts, "Alphabet", "ALPHA", _alphabet);
+            char[] chars = new char[_n];
+            int min = Character.MAX_VALUE, max = 0;
+            for (int k = 0; k < _n; k += 1) {
+                chars[k] = _alphabet.toChar(k);
+                min = Math.min(min, chars[k]);
+                max = Math.max(max, chars[k]);
+            }
+            constant(consts, "char[]", "CHARS", chars);
+            if (max - min >= Alphabet.DENSE_SPAN) {
+                return "        int c = ALPHA.toInt(chars[k]);\n";
+            }
+            int[] index = new int[max - min + 1];
+            Arrays.fill(index, -1);
+            for (int k = 0; k < _n; k += 1) {
+                index[chars[k] - min] = k;
+            }
+            constant(consts, "int[]", "INDEX", index);
+            return "        int ch = chars[k] - " + min + ";\n"
+                + "        int c = ch >= 0 && ch < " + index.length
+                + " ? INDEX[ch] : -1;\n";
+        }
+
+        /** Return the method rebuilding the composite table of the slow
+         *  rotors, one pass per rotor, as MachineState does. */
+        private String rebuild() {
+            StringBuilder params = new StringBuilder();
+            StringBuilder result = new StringBuilder();
+            for (int r = 0; r < _last; r += 1) {
+                params.append(r == 0 ? "" : ", ").append("int p").append(r);
+                result.append("        _k").append(r).append(" = p")
+                    .append(r).append(";\n");
+            }
+            result.append("        int[] t = _comp;\n")
+                .append("        for (int c = 0; c < N; c += 1) {\n")
+                .append("            t[c] = c;\n        }\n");
+            for (int r = _last - 1; r > 0; r -= 1) {
+                result.append("        S").append(r)
+                    .append(".convertForward(t, p").append(r).append(");\n");
+            }
+            for (int r = 0; r < _last; r += 1) {
+                result.append("        S").append(r)
+                    .append(".convertBackward(t, p").append(r).append(");\n");
+            }
+            return "    private void rebuild(" + params + ") {\n" + result
+                + "        _rebuilds += 1;\n    }\n";
+        }
+
+        /** Return the identity table over my alphabet. */
+        private int[] identity() {
+            int[] result = new int[_n];
+            for (int k = 0; k < _n; k += 1) {
+                result[k] = k;
+            }
+            return result;
+        }
+
+        /** The spec being specialized. */
+        private final MachineSpec _spec;
+        /** Its alphabet. */
+        private final Alphabet _alphabet;
+        /** Size of _alphabet. */
+        private final int _n;
+        /** Index of the fast rotor's slot. */
+        private final int _last;
+        /** Constants read by the generated class from its class data. */
+        private final List<Object> _data = new ArrayList<>();
+        /** The result of notchTest() for each slot it has been called
+         *  on. */
+        private final Map<Integer, String> _notchTests = new HashMap<>();
+    }
+
+    /** Number of generated classes kept by default. */
+    static final int DEFAULT_CLASSES = 16;
+
+    /** Name of the generated classes. */
+    private static final String CLASS_NAME = "SpecializedState";
+
+    /** Slots with more notches than this test them with a table. */
+    private static final int MAX_NOTCH_TESTS = 4;
+
+    /** Number of random runs each generated class is checked on. */
+    private static final int VERIFY_TRIALS = 6;
+
+    /** Characters converted in each check beyond twice the alphabet
+     *  size. */
+    private static final int VERIFY_EXTRA = 257;
+
+    /** Seed of the random checks. */
+    private static final long VERIFY_SEED = 0x656e69676d61L;
+
+    /** Constructors of the generated classes, each to be set once its
+     *  class is compiled and checked, most recently used last, keyed by
+     *  alphabet, slot rotors and plugboard. */
+    private final LinkedHashMap<List<Object>, FutureTask<MethodHandle>>
+        _classes;
+
+    /** Number of classes generated. */
+    private int _generated;
+}
@@ -0,0 +1,145 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Specializer class.
+ *  @author James Nho Nguyen
+ */
+public class SpecializerTest {
+
+    /** Testing time limit, allowing for the compiler to start. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /** Return a generic state over a machine with rotors generated from
+     *  SEED over ALPHABET, with rotor tables of at most BUDGET bytes
+     *  each, plugboard CYCLES, and random positions. */
+    private static MachineState state(Alphabet alphabet, long seed,
+                                      long budget, String cycles) {
+        Random random = new Random(seed);
+        Machine mach = new RotorGenerator(alphabet, seed).machine(
+            6, 4, 1, 1, 4, 1 + random.nextInt(6));
+        mach.setTableBudget(budget * 6);
+        mach.insertRotors(new String[] { "R1", "F1", "M1", "M2", "M3",
+                                         "M4" });
+        mach.setPlugboard(new Permutation(cycles, alphabet));
+        for (int r = 1; r < 6; r += 1) {
+            mach.state().positions()[r] = random.nextInt(alphabet.size());
+        }
+        return mach.state();
+    }
+
+    /** Check that STATE and the state specialized from it by SPECIALIZER
+     *  convert a random message of LENGTH characters alike. */
+    private static void checkAgrees(Specializer specializer,
+                                    MachineState state, int length) {
+        Alphabet alphabet = state.spec().alphabet();
+        MachineState special = specializer.specialize(state.copy());
+        assertNotSame(MachineState.class, special.getClass());
+        Random random = new Random(length);
+        char[] expected = new char[length];
+        for (int k = 0; k < length; k += 1) {
+            expected[k] = alphabet.toChar(random.nextInt(alphabet.size()));
+        }
+        char[] actual = expected.clone();
+        state.convert(expected, 0, length, alphabet);
+        special.convert(actual, 0, length, alphabet);
+        assertArrayEquals(expected, actual);
+        assertArrayEquals(state.positions(), special.positions());
+        assertEquals(state.compositeRebuilds(), special.compositeRebuilds());
+        for (int k = 0; k < 100; k += 1) {
+            assertEquals(state.convert(k), special.convert(k));
+        }
+        MachineState copy = special.copy();
+        assertSame(special.getClass(), copy.getClass());
+        assertEquals(state.convert(7), copy.convert(7));
+    }
+
+    @Test
+    public void testAgreesWithGeneric() {
+        if (!Specializer.available()) {
+            return;
+        }
+        Specializer specializer = new Specializer();
+        checkAgrees(specializer,
+                    state(UPPER, 1, Rotor.DEFAULT_TABLE_BUDGET, ""), 50000);
+        checkAgrees(specializer,
+                    state(UPPER, 2, Rotor.DEFAULT_TABLE_BUDGET,
+                          "(AQ) (BZ) (CX)"), 50000);
+        Alphabet wide = Alphabet.range(0x4e00, 0x4e00 + 599);
+        checkAgrees(specializer,
+                    state(wide, 3, Rotor.DEFAULT_TABLE_BUDGET, ""), 100000);
+        checkAgrees(specializer, state(wide, 4, 0, ""), 100000);
+        assertEquals(4, specializer.generated());
+    }
+
+    @Test
+    public void testClassesReused() {
+        if (!Specializer.available()) {
+            return;
+        }
+        Specializer specializer = new Specializer();
+        MachineState state = state(UPPER, 5, Rotor.DEFAULT_TABLE_BUDGET,
+                                   "(AB)");
+        MachineState first = specializer.specialize(state);
+        MachineState second = specializer.specialize(state.copy());
+        assertSame(first.getClass(), second.getClass());
+        assertEquals(1, specializer.generated());
+    }
+
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        if (!Specializer.available()) {
+            return;
+        }
+        Specializer specializer = new Specializer();
+        MachineState state = state(UPPER, 7, Rotor.DEFAULT_TABLE_BUDGET,
+                                   "(AB) (CD)");
+        List<Class<?>> classes = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t += 1) {
+            MachineState copy = state.copy();
+            Thread thread = new Thread(() -> {
+                Class<?> made = specializer.specialize(copy).getClass();
+                synchronized (classes) {
+                    classes.add(made);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(4, classes.size());
+        for (Class<?> made : classes) {
+            assertSame(classes.get(0), made);
+        }
+        assertEquals(1, specializer.generated());
+    }
+
+    @Test
+    public void testBytes() {
+        if (!Specializer.available()) {
+            return;
+        }
+        MachineState state = state(Alphabet.bytes(), 6,
+                                   Rotor.DEFAULT_TABLE_BUDGET, "");
+        MachineState special = new Specializer().specialize(state.copy());
+        byte[] expected = new byte[70000];
+        new Random(6).nextBytes(expected);
+        byte[] actual = expected.clone();
+        state.convert(expected, 0, expected.length);
+        special.convert(actual, 0, actual.length);
+        assertArrayEquals(expected, actual);
+    }
+}
@@ -1,5 +1,13 @@
 package enigma;
 
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -39,6 +47,63 @@ class TestUtils {
                   + "(PW) (QZ) (SX) (UY)");
     }
 
+    /** Notches of the naval rotors that rotate. */
+    static final HashMap<String, String> NAVAL_NOTCHES = new HashMap<>();
+    static {
+        NAVAL_NOTCHES.put("I", "Q");
+        NAVAL_NOTCHES.put("II", "E");
+        NAVAL_NOTCHES.put("III", "V");
+        NAVAL_NOTCHES.put("IV", "J");
+        NAVAL_NOTCHES.put("V", "Z");
+        NAVAL_NOTCHES.put("VI", "ZM");
+        NAVAL_NOTCHES.put("VII", "ZM");
+        NAVAL_NOTCHES.put("VIII", "ZM");
+    }
+
+    /** Return a machine over UPPER with 5 slots and 3 pawls whose
+     *  available rotors are all the naval rotors of NAVALA: B and C as
+     *  reflectors, Beta and Gamma fixed, and the others moving, with the
+     *  notches of NAVAL_NOTCHES. */
+    static Machine navalMachine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String name : new String[] { "B", "C" }) {
+            rotors.add(new Reflector(name,
+                    new Permutation(NAVALA.get(name), UPPER)));
+        }
+        for (String name : new String[] { "Beta", "Gamma" }) {
+            rotors.add(new FixedRotor(name,
+                    new Permutation(NAVALA.get(name), UPPER)));
+        }
+        for (String name : new String[] { "I", "II", "III", "IV", "V", "VI",
+                                          "VII", "VIII" }) {
+            rotors.add(new MovingRotor(name,
+                    new Permutation(NAVALA.get(name), UPPER),
+                    NAVAL_NOTCHES.get(name)));
+        }
+        return new Machine(UPPER, 5, 3, rotors);
+    }
+
+    /** Write an image of MACHINE, which Main can read as its
+     *  configuration, to FILE. */
+    static void writeImage(Machine machine, Path file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(
+                 new FileOutputStream(file.toString()))) {
+            ConfigImage.write(machine, out);
+        }
+    }
+
+    /** Return the output Main would give for INPUT, which must convert
+     *  without error, with MACHINE. */
+    static String convert(Machine machine, String input) {
+        StringWriter output = new StringWriter();
+        SettingsCache cache = new SettingsCache(0);
+        new MessageStream(machine,
+            (line) -> Main.applySettings(machine, line, cache, null),
+            new StringReader(input), output,
+            MessageStream.FlushPolicy.BUFFER).process();
+        return output.toString();
+    }
+
     /** The mapping of the upper-case alphabet by NAVALA. */
     static final HashMap<String, String> NAVALA_MAP = new HashMap<>();
     static {
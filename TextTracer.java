@@ -0,0 +1,77 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import static enigma.EnigmaException.*;
+
+/** A Tracer that writes one line per character in the format of the
+ *  --verbose option, for example "[AXLF] Y -> F -> ... -> Z".
+ *  @author James Nho Nguyen
+ */
+class TextTracer implements Tracer {
+
+    /** A tracer writing characters of ALPHABET to OUTPUT, which should be
+     *  buffered.  If LINEFLUSH, OUTPUT is flushed after each line. */
+    TextTracer(Alphabet alphabet, Writer output, boolean lineFlush) {
+        _alphabet = alphabet;
+        _output = output;
+        _lineFlush = lineFlush;
+    }
+
+    @Override
+    public void start(int[] positions, int c) {
+        try {
+            _output.write('[');
+            for (int r = 1; r < positions.length; r += 1) {
+                _output.write(_alphabet.toChar(positions[r]));
+            }
+            _output.write("] ");
+            hop(c);
+        } catch (IOException excp) {
+            throw error("could not write trace: %s", excp.getMessage());
+        }
+    }
+
+    @Override
+    public void hop(int c) {
+        try {
+            _output.write(_alphabet.toChar(c));
+            _output.write(" -> ");
+        } catch (IOException excp) {
+            throw error("could not write trace: %s", excp.getMessage());
+        }
+    }
+
+    @Override
+    public void end(int c) {
+        try {
+            _output.write(_alphabet.toChar(c));
+            _output.write(NEWLINE);
+            if (_lineFlush) {
+                _output.flush();
+            }
+        } catch (IOException excp) {
+            throw error("could not write trace: %s", excp.getMessage());
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            _output.flush();
+        } catch (IOException excp) {
+            throw error("could not write trace: %s", excp.getMessage());
+        }
+    }
+
+    /** Line separator. */
+    private static final String NEWLINE = System.lineSeparator();
+
+    /** Alphabet of the traced machine. */
+    private final Alphabet _alphabet;
+    /** Destination of the trace. */
+    private final Writer _output;
+    /** True if _output is flushed after each line. */
+    private final boolean _lineFlush;
+}
@@ -0,0 +1,43 @@
+package enigma;
+
+/** Receives the path of each character through a machine: the rotor
+ *  positions after stepping, the character after the plugboard and after
+ *  each rotor, and the result.  Characters are indices into the machine's
+ *  alphabet.
+ *  @author James Nho Nguyen
+ */
+interface Tracer {
+
+    /** A tracer that records nothing.  Machines use the untraced path
+     *  when their tracer is NONE. */
+    Tracer NONE = new Tracer() {
+        @Override
+        public void start(int[] positions, int c) {
+        }
+
+        @Override
+        public void hop(int c) {
+        }
+
+        @Override
+        public void end(int c) {
+        }
+
+        @Override
+        public void flush() {
+        }
+    };
+
+    /** Begin tracing input character C, converted with the rotors at
+     *  POSITIONS (slot 0 being the reflector). */
+    void start(int[] positions, int c);
+
+    /** Record that the character being traced has become C. */
+    void hop(int c);
+
+    /** Finish tracing a character whose conversion is C. */
+    void end(int c);
+
+    /** Write out anything buffered. */
+    void flush();
+}
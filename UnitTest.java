@@ -14,9 +14,24 @@ public class UnitTest {
             System.exit(textui.runClasses(PermutationTest.class,
                     MovingRotorTest.class));
         }
-        System.exit(textui.runClasses(PermutationTest.class,
+        System.exit(textui.runClasses(AlphabetTest.class,
+                PermutationTest.class,
                 MovingRotorTest.class,
-                MachineTest.class));
+                OdometerTest.class,
+                MachineTest.class,
+                MachineSpecTest.class,
+                ConfigImageTest.class,
+                LexerTest.class,
+                SettingsCacheTest.class,
+                MessageStreamTest.class,
+                SectionStreamTest.class,
+                MappedStreamTest.class,
+                GroupFormatterTest.class,
+                ByteStreamTest.class,
+                SpecializerTest.class,
+                SessionBatchTest.class,
+                DaemonTest.class,
+                SessionServerTest.class));
     }
 
 }
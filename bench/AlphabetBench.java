@@ -0,0 +1,77 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of Alphabet lookups, for a dense alphabet (the upper-case
+ *  letters) and a sparse one (letters spread over a wide range of
+ *  characters, so that toInt hashes).
+ *  @author James Nho Nguyen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(AlphabetBench.CHARS)
+public class AlphabetBench {
+
+    /** Kind of alphabet: "dense" or "sparse". */
+    @Param({ "dense", "sparse" })
+    public String kind;
+
+    /** Build the alphabet and the characters and indices to look up. */
+    @Setup
+    public void setUp() {
+        StringBuilder chars = new StringBuilder();
+        for (int k = 0; k < 26; k += 1) {
+            chars.append(kind.equals("dense") ? (char) ('A' + k)
+                         : (char) ('A' + k * SPARSE_STRIDE));
+        }
+        _alphabet = new Alphabet(chars.toString());
+        for (int k = 0; k < CHARS; k += 1) {
+            _indices[k] = (k * 7) % _alphabet.size();
+            _chars[k] = _alphabet.toChar(_indices[k]);
+        }
+    }
+
+    /** Return the sum of the indices of CHARS characters. */
+    @Benchmark
+    public int toInt() {
+        int sum = 0;
+        for (char c : _chars) {
+            sum += _alphabet.toInt(c);
+        }
+        return sum;
+    }
+
+    /** Return the sum of the characters at CHARS indices. */
+    @Benchmark
+    public int toChar() {
+        int sum = 0;
+        for (int k : _indices) {
+            sum += _alphabet.toChar(k);
+        }
+        return sum;
+    }
+
+    /** Number of lookups per benchmark invocation. */
+    static final int CHARS = 1024;
+
+    /** Distance between the characters of the sparse alphabet. */
+    private static final int SPARSE_STRIDE = 997;
+
+    /** Alphabet under test. */
+    private Alphabet _alphabet;
+    /** Characters to look up. */
+    private final char[] _chars = new char[CHARS];
+    /** Indices to look up. */
+    private final int[] _indices = new int[CHARS];
+}
@@ -0,0 +1,90 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of Machine conversions, in nanoseconds per character:
+ *  single characters through convert(int), which also steps the rotors,
+ *  and whole messages of several lengths through convert(String).
+ *  @author James Nho Nguyen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MachineBench {
+
+    /** Return a naval machine (B Beta III IV I) at setting AXLE with
+     *  plugboard (HQ) (EX) (IP) (TR) (BY). */
+    static Machine navalMachine() {
+        Machine machine = TestUtils.navalMachine();
+        machine.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        machine.setRotors("AXLE");
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                             TestUtils.UPPER));
+        return machine;
+    }
+
+    /** Return a message of LENGTH upper-case letters. */
+    static String message(int length) {
+        char[] chars = new char[length];
+        for (int k = 0; k < length; k += 1) {
+            chars[k] = (char) ('A' + (k * 7 + k / 26) % 26);
+        }
+        return new String(chars);
+    }
+
+    /** Build the machine and messages. */
+    @Setup
+    public void setUp() {
+        _machine = navalMachine();
+        _short = message(SHORT);
+        _medium = message(MEDIUM);
+        _long = message(LONG);
+    }
+
+    /** Return the conversion of one character. */
+    @Benchmark
+    public int convertChar() {
+        _next = _next == 25 ? 0 : _next + 1;
+        return _machine.convert(_next);
+    }
+
+    /** Return the conversion of a message of SHORT characters. */
+    @Benchmark
+    @OperationsPerInvocation(SHORT)
+    public String convertShort() {
+        return _machine.convert(_short);
+    }
+
+    /** Return the conversion of a message of MEDIUM characters. */
+    @Benchmark
+    @OperationsPerInvocation(MEDIUM)
+    public String convertMedium() {
+        return _machine.convert(_medium);
+    }
+
+    /** Return the conversion of a message of LONG characters. */
+    @Benchmark
+    @OperationsPerInvocation(LONG)
+    public String convertLong() {
+        return _machine.convert(_long);
+    }
+
+    /** Lengths of the messages converted. */
+    static final int SHORT = 16, MEDIUM = 1024, LONG = 1 << 16;
+
+    /** Machine under test. */
+    private Machine _machine;
+    /** Messages of SHORT, MEDIUM and LONG characters. */
+    private String _short, _medium, _long;
+    /** Index of the last character converted by convertChar. */
+    private int _next;
+}
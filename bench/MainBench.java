@@ -0,0 +1,93 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** End-to-end benchmark of Main: reading a configuration file, then
+ *  converting a generated input file of several messages to an output
+ *  file.
+ *  @author James Nho Nguyen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MainBench {
+
+    /** Number of message characters in the input. */
+    @Param({ "10000", "1000000" })
+    public int chars;
+
+    /** Write the configuration and input files. */
+    @Setup
+    public void setUp() throws IOException {
+        _config = File.createTempFile("enigma", ".conf");
+        _input = File.createTempFile("enigma", ".in");
+        _output = File.createTempFile("enigma", ".out");
+        try (Writer out = new FileWriter(_config)) {
+            out.write(TestUtils.UPPER_STRING + "\n5 3\n");
+            for (String[] rotor : ROTORS) {
+                out.write(rotor[0] + " " + rotor[1] + " "
+                          + TestUtils.NAVALA.get(rotor[0]) + "\n");
+            }
+        }
+        String text = MachineBench.message(LINE);
+        try (Writer out = new FileWriter(_input)) {
+            for (int k = 0; k < chars; k += LINE) {
+                if (k % MESSAGE == 0) {
+                    out.write("* B Beta III IV I AXLE (HQ) (EX) (IP)\n");
+                }
+                out.write(text, 0, Math.min(LINE, chars - k));
+                out.write('\n');
+            }
+        }
+    }
+
+    /** Remove the files written by setUp. */
+    @TearDown
+    public void tearDown() {
+        _config.delete();
+        _input.delete();
+        _output.delete();
+    }
+
+    /** Run Main on the generated files.  Main.main would exit the fork
+     *  on an error, so this uses the entry point that throws instead. */
+    @Benchmark
+    public void process() {
+        new Main(List.of(_config.getPath(), _input.getPath(),
+                         _output.getPath())).process();
+    }
+
+    /** Name and type of each rotor in the configuration. */
+    private static final String[][] ROTORS = {
+        { "I", "MQ" }, { "II", "ME" }, { "III", "MV" }, { "IV", "MJ" },
+        { "V", "MZ" }, { "Beta", "N" }, { "Gamma", "N" }, { "B", "R" },
+        { "C", "R" },
+    };
+
+    /** Characters per input line. */
+    private static final int LINE = 60;
+    /** Characters per message. */
+    private static final int MESSAGE = 100 * LINE;
+
+    /** Configuration file. */
+    private File _config;
+    /** Input file. */
+    private File _input;
+    /** Output file. */
+    private File _output;
+}
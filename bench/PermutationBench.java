@@ -0,0 +1,66 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of Permutation.permute and invert on the naval rotors of
+ *  TestUtils.
+ *  @author James Nho Nguyen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(PermutationBench.CHARS)
+public class PermutationBench {
+
+    /** Name of the naval rotor whose permutation is measured. */
+    @Param({ "I", "V", "Beta", "B" })
+    public String rotor;
+
+    /** Build the permutation and the indices to convert. */
+    @Setup
+    public void setUp() {
+        _perm = new Permutation(TestUtils.NAVALA.get(rotor),
+                                new Alphabet(TestUtils.UPPER_STRING));
+        for (int k = 0; k < CHARS; k += 1) {
+            _indices[k] = (k * 7) % _perm.size();
+        }
+    }
+
+    /** Return the sum of the images of CHARS indices. */
+    @Benchmark
+    public int permute() {
+        int sum = 0;
+        for (int k : _indices) {
+            sum += _perm.permute(k);
+        }
+        return sum;
+    }
+
+    /** Return the sum of the inverse images of CHARS indices. */
+    @Benchmark
+    public int invert() {
+        int sum = 0;
+        for (int k : _indices) {
+            sum += _perm.invert(k);
+        }
+        return sum;
+    }
+
+    /** Number of conversions per benchmark invocation. */
+    static final int CHARS = 1024;
+
+    /** Permutation under test. */
+    private Permutation _perm;
+    /** Indices to convert. */
+    private final int[] _indices = new int[CHARS];
+}
@@ -0,0 +1,78 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of Rotor conversions, at the rotor's own setting and at an
+ *  explicit position, using naval rotor I.
+ *  @author James Nho Nguyen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(RotorBench.CHARS)
+public class RotorBench {
+
+    /** Build the rotor and the indices and positions to convert at. */
+    @Setup
+    public void setUp() {
+        _rotor = new MovingRotor("I",
+                new Permutation(TestUtils.NAVALA.get("I"),
+                                new Alphabet(TestUtils.UPPER_STRING)),
+                "Q");
+        _rotor.set(5);
+        for (int k = 0; k < CHARS; k += 1) {
+            _indices[k] = (k * 7) % _rotor.size();
+            _positions[k] = (k * 11) % _rotor.size();
+        }
+    }
+
+    /** Return the sum of the forward conversions of CHARS indices. */
+    @Benchmark
+    public int convertForward() {
+        int sum = 0;
+        for (int k : _indices) {
+            sum += _rotor.convertForward(k);
+        }
+        return sum;
+    }
+
+    /** Return the sum of the backward conversions of CHARS indices. */
+    @Benchmark
+    public int convertBackward() {
+        int sum = 0;
+        for (int k : _indices) {
+            sum += _rotor.convertBackward(k);
+        }
+        return sum;
+    }
+
+    /** Return the sum of the forward conversions of CHARS indices, each at
+     *  a different position. */
+    @Benchmark
+    public int convertForwardAt() {
+        int sum = 0;
+        for (int k = 0; k < CHARS; k += 1) {
+            sum += _rotor.convertForward(_indices[k], _positions[k]);
+        }
+        return sum;
+    }
+
+    /** Number of conversions per benchmark invocation. */
+    static final int CHARS = 1024;
+
+    /** Rotor under test. */
+    private Rotor _rotor;
+    /** Indices to convert. */
+    private final int[] _indices = new int[CHARS];
+    /** Positions for convertForwardAt. */
+    private final int[] _positions = new int[CHARS];
+}
@@ -0,0 +1,105 @@
+package enigma;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/** A SessionBatch kernel that steps and converts as many lanes at once
+ *  as fit in the machine's preferred vector of ints: positions and
+ *  notch flags are combined with vector and/or/add/compare, and rotor,
+ *  notch and plugboard tables are read with gathers.  Lanes left over
+ *  at the end of a run are converted by SessionBatch.convertScalar.
+ *  Needs the jdk.incubator.vector module; see Makefile.
+ *  @author James Nho Nguyen
+ */
+final class VectorKernel implements SessionBatch.Kernel {
+
+    @Override
+    public void convert(SessionBatch batch, int[] column, int offset,
+                        int active) {
+        final int n = batch.alphabet().size(), cap = batch.capacity();
+        final int last = batch.numSlots() - 1;
+        final int first = batch.firstRotating();
+        final int[] pos = batch.lanePositions(), band = batch.bands();
+        final int[] notchBase = batch.notchBases(), rot = batch.rotating();
+        final int[] notches = batch.notchFlags(), plugs = batch.plugTables();
+        final int[] forward = batch.forwardTables();
+        final int[] backward = batch.backwardTables();
+        final int[] plugBase = batch.plugBases();
+        final int width = SPECIES.length();
+        final int[] index = _index.get();
+        final IntVector zero = IntVector.zero(SPECIES);
+        final IntVector one = IntVector.broadcast(SPECIES, 1);
+        int l;
+        for (l = 0; l + width <= active; l += width) {
+            IntVector here = zero, rotLeft = zero;
+            for (int r = first, i = first * cap + l; r <= last;
+                 r += 1, i += cap) {
+                IntVector rotates = IntVector.fromArray(SPECIES, rot, i);
+                IntVector right, move;
+                if (r < last) {
+                    IntVector base =
+                        IntVector.fromArray(SPECIES, notchBase, i + cap);
+                    IntVector p = IntVector.fromArray(SPECIES, pos, i + cap);
+                    right = gather(notches, index, base.add(p));
+                    move = rotates.and(here.and(rotLeft).or(right));
+                } else {
+                    right = zero;
+                    move = rotates.and(one);
+                }
+                IntVector p = IntVector.fromArray(SPECIES, pos, i).add(move);
+                p.blend(zero, p.compare(VectorOperators.EQ, n))
+                    .intoArray(pos, i);
+                here = right;
+                rotLeft = rotates;
+            }
+            IntVector plug = IntVector.fromArray(SPECIES, plugBase, l);
+            IntVector c = IntVector.fromArray(SPECIES, column,
+                                              offset + l);
+            c = gather(plugs, index, plug.add(c));
+            for (int i = last * cap + l; i > l; i -= cap) {
+                c = shift(forward, index, c, band, pos, i, n);
+            }
+            for (int i = l; i <= last * cap + l; i += cap) {
+                c = shift(backward, index, c, band, pos, i, n);
+            }
+            gather(plugs, index, plug.add(c)).intoArray(column, offset + l);
+        }
+        batch.convertScalar(column, offset, l, active);
+    }
+
+    @Override
+    public String name() {
+        return "vector" + SPECIES.vectorBitSize();
+    }
+
+    /** Return the conversion of the characters C of the lanes whose
+     *  slot entries start at I in BAND and POS, through TABLE, with
+     *  alphabet size N.  INDEX is scratch space for the gather. */
+    private static IntVector shift(int[] table, int[] index, IntVector c,
+                                   int[] band, int[] pos, int i, int n) {
+        IntVector p = IntVector.fromArray(SPECIES, pos, i);
+        IntVector b = IntVector.fromArray(SPECIES, band, i);
+        IntVector r = gather(table, index, b.add(c).add(p)).sub(p);
+        return r.add(r.lanewise(VectorOperators.ASHR, SIGN).and(n));
+    }
+
+    /** Return the elements of TABLE at the indices OFFSETS, passing them
+     *  through INDEX, which has one entry per lane. */
+    private static IntVector gather(int[] table, int[] index,
+                                    IntVector offsets) {
+        offsets.intoArray(index, 0);
+        return IntVector.fromArray(SPECIES, table, 0, index, 0);
+    }
+
+    /** Shape of the vectors used. */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+    /** Shift that leaves the sign of an int in every bit. */
+    private static final int SIGN = 31;
+
+    /** Scratch space for gathers, one entry per lane, made once for each
+     *  thread that uses me rather than on every call. */
+    private final ThreadLocal<int[]> _index =
+        ThreadLocal.withInitial(() -> new int[SPECIES.length()]);
+}